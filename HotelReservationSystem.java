@@ -1,42 +1,80 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
 
 enum RoomType { STANDARD, DELUXE, SUITE }
 
 class Room implements Serializable {
+    private static final long serialVersionUID = 2L; // 1 was the pre-journal shape, see LegacyHotelData
     int roomNumber;
     RoomType type;
     double pricePerNight;
-    boolean isAvailable;
+    boolean onMarket;      // false while the room is withdrawn from sale; dated bookings live in the hotel's calendar
+    transient Hotel hotel; // owning hotel, notified of availability changes
+    transient int index;   // position in hotel.rooms
+    // This room's reservations by check-in epoch day (unique, since stays never overlap); guarded by this
+    transient TreeMap<Long, Reservation> reservationsByCheckIn = new TreeMap<>();
 
     Room(int roomNumber, RoomType type, double pricePerNight) {
         this.roomNumber = roomNumber;
         this.type = type;
         this.pricePerNight = pricePerNight;
-        this.isAvailable = true;
+        this.onMarket = true;
     }
 
-    boolean book() {
-        if (isAvailable) {
-            isAvailable = false;
+    // Takes the room off the market (e.g. for maintenance); existing bookings are kept
+    synchronized boolean withdraw() {
+        if (onMarket) {
+            onMarket = false;
+            if (hotel != null) hotel.availabilityChanged(this);
             return true;
         }
         return false;
     }
 
-    void cancel() {
-        isAvailable = true;
+    synchronized void reinstate() {
+        if (!onMarket) {
+            onMarket = true;
+            if (hotel != null) hotel.availabilityChanged(this);
+        }
     }
 
+    // Whether the room is free on given dates is up to the hotel's calendar, so only a withdrawal shows here
     @Override
     public String toString() {
-        return "Room " + roomNumber + " [" + type + "] - $" + pricePerNight + " per night - " +
-               (isAvailable ? "Available" : "Booked");
+        return "Room " + roomNumber + " [" + type + "] - $" + pricePerNight + " per night" + (onMarket ? "" : " - Off market");
     }
 }
 
 class Customer implements Serializable {
+    private static final long serialVersionUID = 4782909125121032490L; // unchanged since hotelData.ser
     String name;
     String email;
     String phone;
@@ -49,13 +87,16 @@ class Customer implements Serializable {
 }
 
 class Reservation implements Serializable {
+    private static final long serialVersionUID = 2L;
+    final long id;
     Customer customer;
     Room room;
     LocalDate checkInDate;
     LocalDate checkOutDate;
     boolean paymentDone;
 
-    Reservation(Customer customer, Room room, LocalDate checkInDate, LocalDate checkOutDate) {
+    Reservation(long id, Customer customer, Room room, LocalDate checkInDate, LocalDate checkOutDate) {
+        this.id = id;
         this.customer = customer;
         this.room = room;
         this.checkInDate = checkInDate;
@@ -64,7 +105,6 @@ class Reservation implements Serializable {
     }
 
     void cancel() {
-        room.cancel();
         paymentDone = false;
     }
 
@@ -82,72 +122,1685 @@ class Reservation implements Serializable {
     }
 }
 
+// Per-night occupancy: for each epoch day with bookings, a bitset of occupied room positions.
+// Checking or listing free rooms for a stay touches one word per 64 rooms per night. Bits are
+// set and cleared with CAS, so bookings of different rooms never block each other; callers hold
+// the room's monitor while checking and occupying its nights, and the hotel's structure read lock.
+class OccupancyCalendar {
+    private final ConcurrentSkipListMap<Long, AtomicLongArray> nights = new ConcurrentSkipListMap<>();
+    private int words; // per-night capacity in 64-bit words; only grows under the structure write lock
+
+    OccupancyCalendar(int rooms) {
+        ensureCapacity(rooms);
+    }
+
+    // Must not run concurrently with anything else touching the calendar
+    void ensureCapacity(int rooms) {
+        int needed = Math.max(1, (rooms + 63) >>> 6);
+        if (needed <= words) return;
+        int grown = Math.max(needed, words * 2);
+        nights.replaceAll((day, old) -> {
+            AtomicLongArray bigger = new AtomicLongArray(grown);
+            for (int i = 0; i < old.length(); i++) bigger.set(i, old.get(i));
+            return bigger;
+        });
+        words = grown;
+    }
+
+    boolean isFree(Room room, LocalDate checkIn, LocalDate checkOut) {
+        int word = room.index >>> 6;
+        long bit = 1L << room.index;
+        for (AtomicLongArray occupied : nights(checkIn, checkOut)) {
+            if ((occupied.get(word) & bit) != 0) return false;
+        }
+        return true;
+    }
+
+    // Clears from candidates every room occupied on any night of the stay
+    void removeOccupied(long[] candidates, LocalDate checkIn, LocalDate checkOut) {
+        for (AtomicLongArray occupied : nights(checkIn, checkOut)) {
+            long any = 0;
+            for (int i = 0; i < candidates.length; i++) {
+                candidates[i] &= ~occupied.get(i);
+                any |= candidates[i];
+            }
+            if (any == 0) return;
+        }
+    }
+
+    void occupy(Room room, LocalDate checkIn, LocalDate checkOut) {
+        int word = room.index >>> 6;
+        long bit = 1L << room.index;
+        for (long day = checkIn.toEpochDay(); day < checkOut.toEpochDay(); day++) {
+            AtomicLongArray occupied = nights.computeIfAbsent(day, d -> new AtomicLongArray(words));
+            long current;
+            do {
+                current = occupied.get(word);
+            } while (!occupied.compareAndSet(word, current, current | bit));
+        }
+    }
+
+    // Empty nights are kept: removing one could race with another room being booked for it
+    void release(Room room, LocalDate checkIn, LocalDate checkOut) {
+        int word = room.index >>> 6;
+        long bit = 1L << room.index;
+        for (AtomicLongArray occupied : nights(checkIn, checkOut)) {
+            long current;
+            do {
+                current = occupied.get(word);
+            } while (!occupied.compareAndSet(word, current, current & ~bit));
+        }
+    }
+
+    private Collection<AtomicLongArray> nights(LocalDate checkIn, LocalDate checkOut) {
+        return nights.subMap(checkIn.toEpochDay(), true, checkOut.toEpochDay(), false).values();
+    }
+}
+
+// Pre-aggregated nightly occupancy and revenue per room type. Each booked stay adds one room-night and
+// the nightly rate to every night it covers, as a range update on a Fenwick tree over epoch days, so
+// booking, cancelling and summing any date range each cost O(log days) however long the stay or range.
+// Updates are atomic adds and run concurrently; only growing the covered days takes the write lock.
+class OccupancyAnalytics {
+    // Totals over a date range for one room type, or all of them
+    static final class Summary {
+        final LocalDate from;
+        final LocalDate to;
+        final long roomNightsAvailable; // current rooms of the type times the nights in the range
+        final long roomNightsSold;
+        final double revenue;
+
+        Summary(LocalDate from, LocalDate to, long roomNightsAvailable, long roomNightsSold, double revenue) {
+            this.from = from;
+            this.to = to;
+            this.roomNightsAvailable = roomNightsAvailable;
+            this.roomNightsSold = roomNightsSold;
+            this.revenue = revenue;
+        }
+
+        double occupancyRate() {
+            return roomNightsAvailable == 0 ? 0.0 : (double) roomNightsSold / roomNightsAvailable;
+        }
+
+        // Average daily rate: revenue per room-night sold
+        double adr() {
+            return roomNightsSold == 0 ? 0.0 : revenue / roomNightsSold;
+        }
+
+        // Revenue per available room-night
+        double revPar() {
+            return roomNightsAvailable == 0 ? 0.0 : revenue / roomNightsAvailable;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final int[] roomCounts = new int[RoomType.values().length];
+    private final RangeFenwick[] sold = new RangeFenwick[RoomType.values().length];
+    private final RangeFenwick[] revenueCents = new RangeFenwick[RoomType.values().length];
+    private long baseDay; // epoch day stored at position 1
+    private int days;     // covered days, a power of two
+    private static final int MAX_DAYS = 1 << 16; // ~179 years, far beyond Hotel.BOOKING_HORIZON_YEARS either way
+
+    OccupancyAnalytics() {
+        baseDay = LocalDate.now().toEpochDay() - 512;
+        days = 2048;
+        for (int t = 0; t < sold.length; t++) {
+            sold[t] = new RangeFenwick(days);
+            revenueCents[t] = new RangeFenwick(days);
+        }
+    }
+
+    synchronized void roomAdded(RoomType type) {
+        roomCounts[type.ordinal()]++;
+    }
+
+    synchronized int roomCount(RoomType type) {
+        return roomCounts[type.ordinal()];
+    }
+
+    void booked(Reservation r) {
+        record(r, 1);
+    }
+
+    void cancelled(Reservation r) {
+        record(r, -1);
+    }
+
+    private void record(Reservation r, int sign) {
+        long in = r.checkInDate.toEpochDay();
+        long out = r.checkOutDate.toEpochDay();
+        int t = r.room.type.ordinal();
+        long cents = sign * Math.round(r.room.pricePerNight * 100);
+        cover(in, out);
+        lock.readLock().lock();
+        try {
+            int first = (int) (in - baseDay) + 1;
+            int last = (int) (out - baseDay);
+            sold[t].add(first, last, sign);
+            revenueCents[t].add(first, last, cents);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Rooms of the type sold for the night of the date
+    long roomsSold(RoomType type, LocalDate night) {
+        return summarize(type, night, night.plusDays(1)).roomNightsSold;
+    }
+
+    // Totals for nights from 'from' up to (not including) 'to'; a null type covers every type
+    Summary summarize(RoomType type, LocalDate from, LocalDate to) {
+        if (!to.isAfter(from)) throw new IllegalArgumentException("Range end must be after its start");
+        long nights = to.toEpochDay() - from.toEpochDay();
+        long soldNights = 0;
+        long cents = 0;
+        long roomsOfType = 0;
+        synchronized (this) {
+            for (RoomType rt : RoomType.values()) if (type == null || rt == type) roomsOfType += roomCounts[rt.ordinal()];
+        }
+        lock.readLock().lock();
+        try {
+            // Clip to the covered days; nothing was ever booked outside them
+            long lo = Math.max(from.toEpochDay(), baseDay);
+            long hi = Math.min(to.toEpochDay(), baseDay + days);
+            if (lo < hi) {
+                int first = (int) (lo - baseDay);
+                int last = (int) (hi - baseDay);
+                for (RoomType rt : RoomType.values()) {
+                    if (type != null && rt != type) continue;
+                    soldNights += sold[rt.ordinal()].sum(last) - sold[rt.ordinal()].sum(first);
+                    cents += revenueCents[rt.ordinal()].sum(last) - revenueCents[rt.ordinal()].sum(first);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return new Summary(from, to, roomsOfType * nights, soldNights, cents / 100.0);
+    }
+
+    // Makes room for a stay ahead of booking it, so a stay that can't be covered fails before anything changes
+    void cover(LocalDate checkIn, LocalDate checkOut) {
+        cover(checkIn.toEpochDay(), checkOut.toEpochDay());
+    }
+
+    // Grows the covered days, doubling and re-centering, until [in, out) fits
+    private void cover(long in, long out) {
+        lock.readLock().lock();
+        try {
+            if (in >= baseDay && out <= baseDay + days) return;
+        } finally {
+            lock.readLock().unlock();
+        }
+        lock.writeLock().lock();
+        try {
+            long lo = Math.min(in, baseDay);
+            long hi = Math.max(out, baseDay + days);
+            if (lo == baseDay && hi == baseDay + days) return;
+            if (hi - lo > MAX_DAYS) throw new IllegalArgumentException("Dates span more than " + MAX_DAYS + " days");
+            int grown = days;
+            while (grown < hi - lo) grown *= 2;
+            long newBase = lo - (grown - (hi - lo)) / 2;
+            int shift = (int) (baseDay - newBase);
+            for (int t = 0; t < sold.length; t++) {
+                sold[t] = sold[t].regrow(grown, shift);
+                revenueCents[t] = revenueCents[t].regrow(grown, shift);
+            }
+            baseDay = newBase;
+            days = grown;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Fenwick tree pair supporting range add and prefix sum over positions 1..n
+    private static final class RangeFenwick {
+        private final AtomicLongArray b1; // differences
+        private final AtomicLongArray b2; // differences times (position - 1)
+
+        RangeFenwick(int n) {
+            b1 = new AtomicLongArray(n + 2);
+            b2 = new AtomicLongArray(n + 2);
+        }
+
+        // Adds v to every position in [first, last]
+        void add(int first, int last, long v) {
+            if (first > last) return;
+            point(first, v, v * (first - 1));
+            point(last + 1, -v, -v * last);
+        }
+
+        // Sum of positions 1..i
+        long sum(int i) {
+            long s1 = 0, s2 = 0;
+            for (int j = i; j > 0; j -= j & -j) {
+                s1 += b1.get(j);
+                s2 += b2.get(j);
+            }
+            return s1 * i - s2;
+        }
+
+        private void point(int i, long d1, long d2) {
+            for (; i < b1.length(); i += i & -i) {
+                b1.addAndGet(i, d1);
+                b2.addAndGet(i, d2);
+            }
+        }
+
+        // A tree of n positions holding this one's values moved 'shift' positions up
+        RangeFenwick regrow(int n, int shift) {
+            int old = b1.length() - 1;
+            long[] diff = new long[old + 1];
+            for (int i = 1; i <= old; i++) diff[i] = b1.get(i);
+            // Undo the Fenwick sums to recover the plain difference array
+            for (int i = old; i > 0; i--) {
+                int parent = i + (i & -i);
+                if (parent <= old) diff[parent] -= diff[i];
+            }
+            RangeFenwick grown = new RangeFenwick(n);
+            long[] t1 = new long[n + 2];
+            long[] t2 = new long[n + 2];
+            for (int i = 1; i <= old; i++) {
+                int j = i + shift;
+                t1[j] = diff[i];
+                t2[j] = diff[i] * (j - 1);
+            }
+            // Linear-time Fenwick build
+            for (int i = 1; i < t1.length; i++) {
+                int parent = i + (i & -i);
+                if (parent < t1.length) {
+                    t1[parent] += t1[i];
+                    t2[parent] += t2[i];
+                }
+                grown.b1.set(i, t1[i]);
+                grown.b2.set(i, t2[i]);
+            }
+            return grown;
+        }
+    }
+}
+
+// Bookings and cancellations are safe from many threads at once: each room's nights are checked and
+// claimed under that room's monitor, so different rooms proceed in parallel and no stay is sold twice.
+// Adding rooms takes the structure write lock and briefly pauses bookings.
 class Hotel implements Serializable {
+    private static final long serialVersionUID = 2L;
     List<Room> rooms = new ArrayList<>();
-    List<Reservation> reservations = new ArrayList<>();
+    private final ConcurrentSkipListMap<Long, Reservation> reservations = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextReservationId = new AtomicLong(1);
+
+    // Indexes over rooms, rebuilt after deserialization
+    private transient ReentrantReadWriteLock structureLock;
+    private transient Map<Integer, Room> roomsByNumber;
+    private transient EnumMap<RoomType, BitSet> availableByType; // bits are positions in rooms
+    private transient EnumMap<RoomType, List<Room>> marketSnapshots; // a missing type is rebuilt on the next read
+    private transient OccupancyCalendar calendar;
+    private transient HotelJournal journal; // null while recovering or when not persisted
+    // Secondary reservation indexes; the per-room index lives on Room
+    private transient ConcurrentHashMap<String, ConcurrentSkipListMap<Long, Reservation>> reservationsByEmail;
+    private transient ConcurrentSkipListMap<Long, ConcurrentSkipListMap<Long, Reservation>> reservationsByCheckIn;
+    private transient OccupancyAnalytics analytics;
+
+    Hotel() {
+        rebuildIndexes();
+    }
 
     void addRoom(Room room) {
-        rooms.add(room);
+        long ticket = 0;
+        structureLock.writeLock().lock();
+        try {
+            if (roomsByNumber.containsKey(room.roomNumber)) {
+                throw new IllegalArgumentException("Room " + room.roomNumber + " already exists");
+            }
+            room.hotel = this;
+            room.index = rooms.size();
+            rooms.add(room);
+            roomsByNumber.put(room.roomNumber, room);
+            calendar.ensureCapacity(rooms.size());
+            analytics.roomAdded(room.type);
+            if (room.onMarket) markAvailable(room, true);
+            if (journal != null) ticket = journal.roomAdded(room);
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+        if (journal != null) journal.awaitDurable(ticket);
+    }
+
+    Room getRoom(int roomNumber) {
+        return roomsByNumber.get(roomNumber);
     }
 
-    List<Room> searchAvailableRooms(RoomType type) {
-        List<Room> availableRooms = new ArrayList<>();
-        for (Room r : rooms) {
-            if (r.type == type && r.isAvailable) {
-                availableRooms.add(r);
+    // Reservations in booking order; a weakly consistent live view
+    Collection<Reservation> getReservations() {
+        return Collections.unmodifiableCollection(reservations.values());
+    }
+
+    // Read-only snapshot of the rooms of a type that are on the market, in the order they were added,
+    // whatever their bookings; use searchAvailableRooms for rooms free on given dates. The snapshot is
+    // taken under the availability lock and shared until a room of the type goes on or off the market,
+    // so repeated calls copy nothing and the list is safe to index and iterate from any thread.
+    List<Room> roomsOnMarket(RoomType type) {
+        structureLock.readLock().lock();
+        try {
+            synchronized (availableByType) {
+                List<Room> snapshot = marketSnapshots.get(type);
+                if (snapshot == null) {
+                    BitSet bits = availableByType.get(type);
+                    Room[] onMarket = new Room[bits.cardinality()];
+                    int i = 0;
+                    for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) onMarket[i++] = rooms.get(bit);
+                    snapshot = Collections.unmodifiableList(Arrays.asList(onMarket));
+                    marketSnapshots.put(type, snapshot);
+                }
+                return snapshot;
             }
+        } finally {
+            structureLock.readLock().unlock();
         }
-        return availableRooms;
     }
 
+    // Rooms of a type that are free for every night from checkIn up to (not including) checkOut
+    List<Room> searchAvailableRooms(RoomType type, LocalDate checkIn, LocalDate checkOut) {
+        validateStay(checkIn, checkOut);
+        structureLock.readLock().lock();
+        try {
+            long[] free;
+            synchronized (availableByType) {
+                free = availableByType.get(type).toLongArray();
+            }
+            calendar.removeOccupied(free, checkIn, checkOut);
+            List<Room> result = new ArrayList<>();
+            for (int w = 0; w < free.length; w++) {
+                for (long bits = free[w]; bits != 0; bits &= bits - 1) {
+                    result.add(rooms.get((w << 6) + Long.numberOfTrailingZeros(bits)));
+                }
+            }
+            return result;
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    boolean isAvailable(Room room, LocalDate checkIn, LocalDate checkOut) {
+        validateStay(checkIn, checkOut);
+        structureLock.readLock().lock();
+        try {
+            return room.onMarket && calendar.isFree(room, checkIn, checkOut);
+        } finally {
+            structureLock.readLock().unlock();
+        }
+    }
+
+    // Stays must lie within this many years of today, which keeps the dense per-day analytics small
+    // and turns a mistyped year into an error before anything is booked
+    static final int BOOKING_HORIZON_YEARS = 10;
+
+    private static void validateStay(LocalDate checkIn, LocalDate checkOut) {
+        if (!checkOut.isAfter(checkIn)) {
+            throw new IllegalArgumentException("Check-out date must be after check-in date");
+        }
+        LocalDate today = LocalDate.now();
+        if (checkIn.isBefore(today.minusYears(BOOKING_HORIZON_YEARS)) || checkOut.isAfter(today.plusYears(BOOKING_HORIZON_YEARS))) {
+            throw new IllegalArgumentException("Stays must be within " + BOOKING_HORIZON_YEARS + " years of today");
+        }
+    }
+
+    // Called with the room's monitor held; the change is journaled but not awaited
+    void availabilityChanged(Room room) {
+        markAvailable(room, room.onMarket);
+        if (journal != null) journal.availabilityChanged(room);
+    }
+
+    private void markAvailable(Room room, boolean available) {
+        synchronized (availableByType) {
+            BitSet bits = availableByType.get(room.type);
+            if (bits.get(room.index) == available) return;
+            bits.set(room.index, available);
+            marketSnapshots.remove(room.type);
+        }
+    }
+
+    private void rebuildIndexes() {
+        structureLock = new ReentrantReadWriteLock();
+        roomsByNumber = new ConcurrentHashMap<>();
+        availableByType = new EnumMap<>(RoomType.class);
+        marketSnapshots = new EnumMap<>(RoomType.class);
+        for (RoomType type : RoomType.values()) availableByType.put(type, new BitSet());
+        for (int i = 0; i < rooms.size(); i++) {
+            Room room = rooms.get(i);
+            room.hotel = this;
+            room.index = i;
+            room.reservationsByCheckIn = new TreeMap<>();
+            roomsByNumber.put(room.roomNumber, room);
+            if (room.onMarket) markAvailable(room, true);
+        }
+        calendar = new OccupancyCalendar(rooms.size());
+        analytics = new OccupancyAnalytics();
+        for (Room room : rooms) analytics.roomAdded(room.type);
+        reservationsByEmail = new ConcurrentHashMap<>();
+        reservationsByCheckIn = new ConcurrentSkipListMap<>();
+        for (Reservation r : reservations.values()) {
+            calendar.occupy(r.room, r.checkInDate, r.checkOutDate);
+            index(r);
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rebuildIndexes();
+    }
+
+    // Books the room for the stay, or returns null if any night overlaps an existing reservation.
+    // With a journal attached, returns once the booking is durable.
     Reservation makeReservation(Customer customer, Room room, LocalDate checkIn, LocalDate checkOut) {
-        if (room.book()) {
-            Reservation reservation = new Reservation(customer, room, checkIn, checkOut);
-            reservations.add(reservation);
-            return reservation;
+        validateStay(checkIn, checkOut);
+        if (room.hotel != this) throw new IllegalArgumentException("Room " + room.roomNumber + " is not in this hotel");
+        analytics.cover(checkIn, checkOut);
+        Reservation reservation;
+        long ticket = 0;
+        structureLock.readLock().lock();
+        try {
+            synchronized (room) {
+                if (!room.onMarket || !calendar.isFree(room, checkIn, checkOut)) return null;
+                calendar.occupy(room, checkIn, checkOut);
+                reservation = new Reservation(nextReservationId.getAndIncrement(), customer, room, checkIn, checkOut);
+                reservations.put(reservation.id, reservation);
+                index(reservation);
+                if (journal != null) ticket = journal.booked(reservation);
+            }
+        } finally {
+            structureLock.readLock().unlock();
         }
-        return null;
+        if (journal != null) journal.awaitDurable(ticket);
+        return reservation;
     }
 
+    // Only the first of several concurrent cancellations of a reservation succeeds
     boolean cancelReservation(Reservation reservation) {
-        if (reservations.remove(reservation)) {
-            reservation.cancel();
+        long ticket = 0;
+        structureLock.readLock().lock();
+        try {
+            synchronized (reservation.room) {
+                if (!reservations.remove(reservation.id, reservation)) return false;
+                unindex(reservation);
+                calendar.release(reservation.room, reservation.checkInDate, reservation.checkOutDate);
+                reservation.cancel();
+                if (journal != null) ticket = journal.cancelled(reservation);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        if (journal != null) journal.awaitDurable(ticket);
+        return true;
+    }
+
+    // Confirms a paid reservation; a failed payment cancels it, releasing the room
+    void settlePayment(Reservation reservation, boolean paid) {
+        if (paid) recordPayment(reservation, true);
+        else cancelReservation(reservation);
+    }
+
+    void recordPayment(Reservation reservation, boolean paid) {
+        long ticket = 0;
+        structureLock.readLock().lock();
+        try {
+            synchronized (reservation.room) {
+                reservation.paymentDone = paid;
+                if (journal != null) ticket = journal.paymentRecorded(reservation);
+            }
+        } finally {
+            structureLock.readLock().unlock();
+        }
+        if (journal != null) journal.awaitDurable(ticket);
+    }
+
+    Reservation getReservation(long id) {
+        return reservations.get(id);
+    }
+
+    // The room's reservations, by check-in date
+    List<Reservation> getReservationsForRoom(Room room) {
+        synchronized (room) {
+            return new ArrayList<>(room.reservationsByCheckIn.values());
+        }
+    }
+
+    Reservation findReservation(Room room, LocalDate checkIn) {
+        synchronized (room) {
+            return room.reservationsByCheckIn.get(checkIn.toEpochDay());
+        }
+    }
+
+    // Reservations made under an email address (case-insensitive), in booking order
+    List<Reservation> getReservationsByEmail(String email) {
+        ConcurrentSkipListMap<Long, Reservation> found = reservationsByEmail.get(emailKey(email));
+        return found == null ? List.of() : new ArrayList<>(found.values());
+    }
+
+    // Reservations checking in on any day from 'from' up to (not including) 'to', by date then booking order
+    List<Reservation> getArrivals(LocalDate from, LocalDate to) {
+        List<Reservation> result = new ArrayList<>();
+        for (ConcurrentSkipListMap<Long, Reservation> day
+                : reservationsByCheckIn.subMap(from.toEpochDay(), true, to.toEpochDay(), false).values()) {
+            result.addAll(day.values());
+        }
+        return result;
+    }
+
+    List<Reservation> getArrivals(LocalDate date) {
+        return getArrivals(date, date.plusDays(1));
+    }
+
+    // Occupancy, ADR and RevPAR for nights from 'from' up to (not including) 'to'; a null type covers all rooms
+    OccupancyAnalytics.Summary summarize(RoomType type, LocalDate from, LocalDate to) {
+        return analytics.summarize(type, from, to);
+    }
+
+    // Lazily streams the reservations a filter selects: by check-in date then booking order when it has
+    // a date range (read from the check-in index), otherwise in booking order. Weakly consistent, and
+    // nothing is copied, so a report over any number of reservations runs in constant memory.
+    Stream<Reservation> streamReservations(ReservationFilter filter) {
+        Stream<Reservation> source;
+        if (filter.checkInFrom == null && filter.checkInTo == null) {
+            source = reservations.values().stream();
+        } else {
+            long from = filter.checkInFrom == null ? Long.MIN_VALUE : filter.checkInFrom.toEpochDay();
+            long to = filter.checkInTo == null ? Long.MAX_VALUE : filter.checkInTo.toEpochDay();
+            source = from >= to ? Stream.empty()
+                    : reservationsByCheckIn.subMap(from, true, to, false).values().stream().flatMap(day -> day.values().stream());
+        }
+        return source.filter(filter::matches);
+    }
+
+    // Call with the reservation's room monitor held
+    private void index(Reservation r) {
+        r.room.reservationsByCheckIn.put(r.checkInDate.toEpochDay(), r);
+        reservationsByEmail.compute(emailKey(r.customer.email), (k, byId) -> {
+            if (byId == null) byId = new ConcurrentSkipListMap<>();
+            byId.put(r.id, r);
+            return byId;
+        });
+        reservationsByCheckIn.computeIfAbsent(r.checkInDate.toEpochDay(), d -> new ConcurrentSkipListMap<>()).put(r.id, r);
+        analytics.booked(r);
+    }
+
+    // Call with the reservation's room monitor held. Emptied check-in days are kept, as removing one
+    // could race with a new arrival on the same day.
+    private void unindex(Reservation r) {
+        r.room.reservationsByCheckIn.remove(r.checkInDate.toEpochDay(), r);
+        reservationsByEmail.computeIfPresent(emailKey(r.customer.email), (k, byId) -> {
+            byId.remove(r.id);
+            return byId.isEmpty() ? null : byId;
+        });
+        ConcurrentSkipListMap<Long, Reservation> day = reservationsByCheckIn.get(r.checkInDate.toEpochDay());
+        if (day != null) day.remove(r.id);
+        analytics.cancelled(r);
+    }
+
+    private static String emailKey(String email) {
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Recovery only: re-creates a journaled or snapshotted reservation under its original id
+    void restoreReservation(Reservation reservation) {
+        analytics.cover(reservation.checkInDate, reservation.checkOutDate);
+        synchronized (reservation.room) {
+            calendar.occupy(reservation.room, reservation.checkInDate, reservation.checkOutDate);
+            reservations.put(reservation.id, reservation);
+            index(reservation);
+        }
+        nextReservationId.accumulateAndGet(reservation.id + 1, Math::max);
+    }
+
+    long getNextReservationId() {
+        return nextReservationId.get();
+    }
+
+    void restoreNextReservationId(long next) {
+        nextReservationId.accumulateAndGet(next, Math::max);
+    }
+
+    void attachJournal(HotelJournal journal) {
+        this.journal = journal;
+    }
+
+    // Runs the action with every booking, cancellation and room change paused
+    void exclusive(Runnable action) {
+        structureLock.writeLock().lock();
+        try {
+            action.run();
+        } finally {
+            structureLock.writeLock().unlock();
+        }
+    }
+}
+
+// Reads hotelData.ser, the serialized Hotel the system saved before the journal existed. Those
+// classes have since changed shape, so the stream's Hotel, Room, Reservation and Customer are read
+// into private copies of their old fields and then rebuilt through the current API. Rooms come back
+// on the market (the old isAvailable flag meant "booked", which the calendar now tracks), and
+// reservations get ids in their saved order; stays the hotel would no longer accept are skipped.
+final class LegacyHotelData {
+    private LegacyHotelData() {
+    }
+
+    private static final class OldRoom implements Serializable {
+        private static final long serialVersionUID = -8007593685765913156L;
+        int roomNumber;
+        RoomType type;
+        double pricePerNight;
+        boolean isAvailable;
+    }
+
+    private static final class OldCustomer implements Serializable {
+        private static final long serialVersionUID = 4782909125121032490L;
+        String name;
+        String email;
+        String phone;
+    }
+
+    private static final class OldReservation implements Serializable {
+        private static final long serialVersionUID = 9059138913432515721L;
+        OldCustomer customer;
+        OldRoom room;
+        LocalDate checkInDate;
+        LocalDate checkOutDate;
+        boolean paymentDone;
+    }
+
+    private static final class OldHotel implements Serializable {
+        private static final long serialVersionUID = -6871472417455258792L;
+        List<OldRoom> rooms;
+        List<OldReservation> reservations;
+    }
+
+    private static final Map<String, ObjectStreamClass> OLD_CLASSES = Map.of(
+            "Hotel", ObjectStreamClass.lookup(OldHotel.class),
+            "Room", ObjectStreamClass.lookup(OldRoom.class),
+            "Reservation", ObjectStreamClass.lookup(OldReservation.class),
+            "Customer", ObjectStreamClass.lookup(OldCustomer.class));
+
+    // Returns an unjournaled hotel holding the file's rooms and reservations; skipped stays are reported on stderr
+    static Hotel read(Path file) throws IOException {
+        OldHotel old;
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file))) {
+            @Override
+            protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+                ObjectStreamClass saved = super.readClassDescriptor();
+                ObjectStreamClass local = OLD_CLASSES.get(saved.getName());
+                if (local == null) return saved;
+                if (local.getSerialVersionUID() != saved.getSerialVersionUID()) {
+                    throw new InvalidClassException(saved.getName(), "not the layout hotelData.ser was written with");
+                }
+                return local;
+            }
+        }) {
+            old = (OldHotel) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(file + " is not a saved hotel", e);
+        }
+
+        Hotel hotel = new Hotel();
+        if (old.rooms != null) {
+            for (OldRoom room : old.rooms) {
+                if (room.type == null || hotel.getRoom(room.roomNumber) != null) {
+                    System.err.println("Skipped room " + room.roomNumber + " from " + file + ": invalid or duplicate");
+                    continue;
+                }
+                hotel.addRoom(new Room(room.roomNumber, room.type, room.pricePerNight));
+            }
+        }
+        if (old.reservations != null) {
+            for (OldReservation r : old.reservations) {
+                String what = "reservation " + (r.room == null ? "?" : r.room.roomNumber) + " " + r.checkInDate + ".." + r.checkOutDate;
+                Room room = r.room == null ? null : hotel.getRoom(r.room.roomNumber);
+                if (room == null || r.customer == null || r.checkInDate == null || r.checkOutDate == null) {
+                    System.err.println("Skipped " + what + " from " + file + ": incomplete");
+                    continue;
+                }
+                Customer customer = new Customer(r.customer.name, r.customer.email, r.customer.phone);
+                Reservation reservation;
+                try {
+                    reservation = hotel.makeReservation(customer, room, r.checkInDate, r.checkOutDate);
+                } catch (IllegalArgumentException e) {
+                    System.err.println("Skipped " + what + " from " + file + ": " + e.getMessage());
+                    continue;
+                }
+                if (reservation == null) {
+                    System.err.println("Skipped " + what + " from " + file + ": overlaps an earlier booking");
+                    continue;
+                }
+                if (r.paymentDone) hotel.recordPayment(reservation, true);
+            }
+        }
+        return hotel;
+    }
+}
+
+// Durable storage for a Hotel: an append-only journal of room, booking, cancellation and payment
+// events plus periodic compact snapshots. Operations append a CRC-checked record and wait for it to
+// be fsynced; concurrent waiters share one write+force (group commit). A snapshot rotates to a new
+// journal generation, so recovery loads the snapshot and replays only the journals written after it.
+//
+// Files: <base>.snapshot and <base>.journal.<generation>
+class HotelJournal implements Closeable {
+    private static final int JOURNAL_MAGIC = 0x484A4E4C; // "HJNL"
+    private static final int SNAPSHOT_MAGIC = 0x48534E50; // "HSNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int JOURNAL_HEADER_BYTES = 16;
+    static final long DEFAULT_SNAPSHOT_BYTES = 64L << 20;
+
+    private static final byte ROOM_ADDED = 1;
+    private static final byte BOOKED = 2;
+    private static final byte CANCELLED = 3;
+    private static final byte PAYMENT = 4;
+    private static final byte AVAILABILITY = 5;
+
+    private final Path dir;
+    private final String base;
+    private final Hotel hotel;
+    private final long snapshotBytes;
+
+    // Group commit state, guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition flushed = lock.newCondition();
+    private ByteBuffer pending = ByteBuffer.allocate(1 << 16);
+    private ByteBuffer spare = ByteBuffer.allocate(1 << 16);
+    private boolean flushing;
+    private long appended;  // logical bytes appended since open, across generations
+    private long durable;   // logical bytes known to be on disk
+    private long generationBytes;
+    private IOException failure;
+    private FileChannel channel;
+    private long generation;
+
+    private boolean closed; // guarded by lock; no background snapshot is scheduled once set
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    // Held for a whole snapshot so an explicit one, a background one and close() never overlap
+    private final ReentrantLock snapshotLock = new ReentrantLock();
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "hotel-snapshot");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private HotelJournal(Path dir, String base, Hotel hotel, long snapshotBytes) {
+        this.dir = dir;
+        this.base = base;
+        this.hotel = hotel;
+        this.snapshotBytes = snapshotBytes;
+    }
+
+    // Recovers the hotel stored under path (e.g. "data/hotelData"), or an empty one, and attaches a journal to it
+    static HotelJournal open(String path) throws IOException {
+        return open(path, DEFAULT_SNAPSHOT_BYTES);
+    }
+
+    // A hotelData.ser left by the old serialized store is imported when nothing has been journaled yet,
+    // then kept as <base>.ser.imported
+    static HotelJournal open(String path, long snapshotBytes) throws IOException {
+        Path full = Paths.get(path).toAbsolutePath();
+        Path dir = full.getParent();
+        String base = full.getFileName().toString();
+        Files.createDirectories(dir);
+
+        TreeMap<Long, Path> journals = new TreeMap<>();
+        String prefix = base + ".journal.";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith(prefix)) continue;
+                try {
+                    journals.put(Long.parseLong(name.substring(prefix.length())), file);
+                } catch (NumberFormatException e) {
+                    // not one of ours
+                }
+            }
+        }
+
+        Path snapshot = dir.resolve(base + ".snapshot");
+        Path legacy = dir.resolve(base + ".ser");
+        boolean importing = journals.isEmpty() && !Files.exists(snapshot) && Files.exists(legacy);
+        Hotel hotel = importing ? LegacyHotelData.read(legacy) : new Hotel();
+        long covered = readSnapshot(snapshot, hotel);
+
+        HotelJournal journal = new HotelJournal(dir, base, hotel, snapshotBytes);
+        long generation = covered + 1;
+        long validEnd = -1;
+        for (Map.Entry<Long, Path> entry : journals.entrySet()) {
+            if (entry.getKey() <= covered) {
+                Files.deleteIfExists(entry.getValue());
+                continue;
+            }
+            generation = entry.getKey();
+            validEnd = replay(entry.getValue(), hotel);
+        }
+        journal.openGeneration(generation, validEnd);
+        hotel.attachJournal(journal);
+        if (importing) {
+            // Once the snapshot is in place the old file is never read again, even if the rename is lost
+            journal.snapshot();
+            Files.move(legacy, dir.resolve(base + ".ser.imported"), StandardCopyOption.REPLACE_EXISTING);
+        }
+        return journal;
+    }
+
+    Hotel hotel() {
+        return hotel;
+    }
+
+    long roomAdded(Room room) {
+        return append(writeRoom(new Record().putByte(ROOM_ADDED), room, room.onMarket));
+    }
+
+    long booked(Reservation reservation) {
+        return append(writeReservation(new Record().putByte(BOOKED), reservation));
+    }
+
+    long cancelled(Reservation reservation) {
+        return append(new Record().putByte(CANCELLED).putLong(reservation.id));
+    }
+
+    long paymentRecorded(Reservation reservation) {
+        return append(new Record().putByte(PAYMENT).putLong(reservation.id).putBoolean(reservation.paymentDone));
+    }
+
+    long availabilityChanged(Room room) {
+        return append(new Record().putByte(AVAILABILITY).putInt(room.roomNumber).putBoolean(room.onMarket));
+    }
+
+    // Blocks until everything appended up to ticket is on disk. Whoever finds no flush in progress
+    // writes and forces the whole pending batch on behalf of every waiter.
+    void awaitDurable(long ticket) {
+        lock.lock();
+        try {
+            while (durable < ticket) {
+                if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+                if (flushing) {
+                    flushed.awaitUninterruptibly();
+                    continue;
+                }
+                flushBatch();
+            }
+            if (generationBytes >= snapshotBytes && !closed && snapshotRunning.compareAndSet(false, true)) {
+                snapshotter.execute(() -> {
+                    try {
+                        snapshotIfOpen();
+                    } catch (IOException | UncheckedIOException e) {
+                        System.err.println("Hotel snapshot failed: " + e.getMessage());
+                    } finally {
+                        snapshotRunning.set(false);
+                    }
+                });
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Writes a compact snapshot of the current state and drops the journals it covers.
+    // Bookings pause only while the journal rotates and the state is copied, not while it is written.
+    void snapshot() throws IOException {
+        if (!snapshotIfOpen()) throw new IOException("Hotel journal is closed");
+    }
+
+    private boolean snapshotIfOpen() throws IOException {
+        snapshotLock.lock();
+        try {
+            lock.lock();
+            try {
+                if (closed) return false;
+            } finally {
+                lock.unlock();
+            }
+            writeSnapshot();
             return true;
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    // Call with snapshotLock held
+    private void writeSnapshot() throws IOException {
+        Captured state = new Captured();
+        hotel.exclusive(() -> {
+            rotate();
+            state.covered = generation - 1;
+            state.nextReservationId = hotel.getNextReservationId();
+            state.rooms = hotel.rooms.toArray(new Room[0]);
+            state.available = new boolean[state.rooms.length];
+            for (int i = 0; i < state.rooms.length; i++) state.available[i] = state.rooms[i].onMarket;
+            state.reservations = hotel.getReservations().toArray(new Reservation[0]);
+            state.paid = new boolean[state.reservations.length];
+            for (int i = 0; i < state.reservations.length; i++) state.paid[i] = state.reservations[i].paymentDone;
+        });
+
+        Path tmp = dir.resolve(base + ".snapshot.tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             OutputStream out = new BufferedOutputStream(file, 1 << 16)) {
+            Record record = new Record();
+            record.putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putLong(state.covered)
+                  .putLong(state.nextReservationId).putInt(state.rooms.length);
+            record.writeTo(out);
+            for (int i = 0; i < state.rooms.length; i++) {
+                writeRoom(record.clear(), state.rooms[i], state.available[i]).writeTo(out);
+            }
+            record.clear().putInt(state.reservations.length).writeTo(out);
+            for (int i = 0; i < state.reservations.length; i++) {
+                writeReservation(record.clear(), state.reservations[i]).putBoolean(state.paid[i]).writeTo(out);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(tmp, dir.resolve(base + ".snapshot"), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long g = state.covered; g >= 0; g--) {
+            if (!Files.deleteIfExists(journalPath(g))) break;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) return;
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        // A snapshot in progress rotates the journal, so let it finish before the channel goes away
+        snapshotter.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (snapshotter.awaitTermination(1, TimeUnit.DAYS)) break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        snapshotLock.lock();
+        lock.lock();
+        try {
+            while (flushing) flushed.awaitUninterruptibly();
+            if (failure == null && pending.position() > 0) flushBatch();
+            channel.close();
+        } finally {
+            lock.unlock();
+            snapshotLock.unlock();
+        }
+        if (failure != null) throw failure;
+    }
+
+    // Call with lock held and no flush in progress; releases the lock during I/O
+    private void flushBatch() {
+        flushing = true;
+        ByteBuffer batch = pending;
+        pending = spare;
+        long batchEnd = appended;
+        lock.unlock();
+        IOException error = null;
+        try {
+            batch.flip();
+            while (batch.hasRemaining()) channel.write(batch);
+            channel.force(false);
+        } catch (IOException e) {
+            error = e;
+        } finally {
+            lock.lock();
+        }
+        batch.clear();
+        spare = batch;
+        flushing = false;
+        if (error != null) failure = error;
+        else durable = batchEnd;
+        flushed.signalAll();
+    }
+
+    private long append(Record record) {
+        CRC32 crc = new CRC32();
+        crc.update(record.buf.array(), 0, record.buf.position());
+        int size = 8 + record.buf.position();
+        lock.lock();
+        try {
+            if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+            if (pending.remaining() < size) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + size));
+                pending.flip();
+                bigger.put(pending);
+                pending = bigger;
+            }
+            pending.putInt(record.buf.position()).putInt((int) crc.getValue()).put(record.buf.array(), 0, record.buf.position());
+            appended += size;
+            generationBytes += size;
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Flushes everything to the current generation and starts the next one. Call with the hotel paused.
+    private void rotate() {
+        lock.lock();
+        try {
+            while (flushing) flushed.awaitUninterruptibly();
+            if (pending.position() > 0) flushBatch();
+            if (failure != null) throw new UncheckedIOException("Journal write failed", failure);
+            channel.close();
+            openGeneration(generation + 1, -1);
+        } catch (IOException e) {
+            failure = e;
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Opens a generation for appending; validEnd >= 0 truncates a recovered file after its last good record
+    private void openGeneration(long gen, long validEnd) throws IOException {
+        channel = FileChannel.open(journalPath(gen), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        if (validEnd >= JOURNAL_HEADER_BYTES) {
+            channel.truncate(validEnd);
+            channel.position(validEnd);
+            generationBytes = validEnd - JOURNAL_HEADER_BYTES;
+        } else {
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_BYTES);
+            header.putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).putLong(gen).flip();
+            while (header.hasRemaining()) channel.write(header);
+            channel.force(true);
+            generationBytes = 0;
+        }
+        generation = gen;
+    }
+
+    private Path journalPath(long gen) {
+        return dir.resolve(base + ".journal." + gen);
+    }
+
+    // Applies every intact record and returns the offset after the last one; a torn or corrupt tail is dropped
+    private static long replay(Path file, Hotel hotel) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile()), 1 << 16))) {
+            long size = Files.size(file);
+            if (size < JOURNAL_HEADER_BYTES) return -1;
+            if (in.readInt() != JOURNAL_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a hotel journal");
+            }
+            in.readLong(); // generation, also in the file name
+            long offset = JOURNAL_HEADER_BYTES;
+            CRC32 crc = new CRC32();
+            byte[] payload = new byte[256];
+            while (size - offset >= 8) {
+                int length = in.readInt();
+                int expected = in.readInt();
+                if (length <= 0 || length > size - offset - 8) break;
+                if (payload.length < length) payload = new byte[Math.max(length, payload.length * 2)];
+                in.readFully(payload, 0, length);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != expected) break;
+                apply(new DataInputStream(new ByteArrayInputStream(payload, 0, length)), hotel);
+                offset += 8 + length;
+            }
+            return offset;
+        }
+    }
+
+    private static void apply(DataInputStream in, Hotel hotel) throws IOException {
+        byte type = in.readByte();
+        switch (type) {
+            case ROOM_ADDED -> hotel.addRoom(readRoom(in));
+            case BOOKED -> hotel.restoreReservation(readReservation(in, hotel));
+            case CANCELLED -> {
+                Reservation reservation = hotel.getReservation(in.readLong());
+                if (reservation != null) hotel.cancelReservation(reservation);
+            }
+            case PAYMENT -> {
+                Reservation reservation = hotel.getReservation(in.readLong());
+                boolean paid = in.readBoolean();
+                if (reservation != null) hotel.recordPayment(reservation, paid);
+            }
+            case AVAILABILITY -> {
+                Room room = roomFor(hotel, in.readInt());
+                if (in.readBoolean()) room.reinstate();
+                else room.withdraw();
+            }
+            default -> throw new IOException("Unknown journal record type " + type);
+        }
+    }
+
+    // Returns the journal generation the snapshot covers, or -1 when there is none
+    private static long readSnapshot(Path file, Hotel hotel) throws IOException {
+        if (!Files.exists(file)) return -1;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile()), 1 << 16))) {
+            if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException(file + " is not a hotel snapshot");
+            }
+            long covered = in.readLong();
+            long nextReservationId = in.readLong();
+            int roomCount = in.readInt();
+            for (int i = 0; i < roomCount; i++) hotel.addRoom(readRoom(in));
+            int reservationCount = in.readInt();
+            for (int i = 0; i < reservationCount; i++) {
+                Reservation reservation = readReservation(in, hotel);
+                reservation.paymentDone = in.readBoolean();
+                hotel.restoreReservation(reservation);
+            }
+            hotel.restoreNextReservationId(nextReservationId);
+            return covered;
+        }
+    }
+
+    private static Record writeRoom(Record r, Room room, boolean available) {
+        return r.putInt(room.roomNumber).putByte(room.type.ordinal()).putDouble(room.pricePerNight).putBoolean(available);
+    }
+
+    private static Room readRoom(DataInputStream in) throws IOException {
+        Room room = new Room(in.readInt(), RoomType.values()[in.readByte()], in.readDouble());
+        room.onMarket = in.readBoolean();
+        return room;
+    }
+
+    private static Record writeReservation(Record r, Reservation reservation) {
+        return r.putLong(reservation.id)
+                .putInt(reservation.room.roomNumber)
+                .putLong(reservation.checkInDate.toEpochDay())
+                .putLong(reservation.checkOutDate.toEpochDay())
+                .putString(reservation.customer.name)
+                .putString(reservation.customer.email)
+                .putString(reservation.customer.phone);
+    }
+
+    private static Reservation readReservation(DataInputStream in, Hotel hotel) throws IOException {
+        long id = in.readLong();
+        Room room = roomFor(hotel, in.readInt());
+        LocalDate checkIn = LocalDate.ofEpochDay(in.readLong());
+        LocalDate checkOut = LocalDate.ofEpochDay(in.readLong());
+        Customer customer = new Customer(readString(in), readString(in), readString(in));
+        return new Reservation(id, customer, room, checkIn, checkOut);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static Room roomFor(Hotel hotel, int roomNumber) throws IOException {
+        Room room = hotel.getRoom(roomNumber);
+        if (room == null) throw new IOException("Journal refers to unknown room " + roomNumber);
+        return room;
+    }
+
+    private static final class Captured {
+        long covered;
+        long nextReservationId;
+        Room[] rooms;
+        boolean[] available;
+        Reservation[] reservations;
+        boolean[] paid;
+    }
+
+    // Growable big-endian encoder for one record
+    private static final class Record {
+        ByteBuffer buf = ByteBuffer.allocate(128);
+
+        Record clear() {
+            buf.clear();
+            return this;
+        }
+
+        Record putByte(int v) {
+            ensure(1).put((byte) v);
+            return this;
+        }
+
+        Record putBoolean(boolean v) {
+            return putByte(v ? 1 : 0);
+        }
+
+        Record putInt(int v) {
+            ensure(4).putInt(v);
+            return this;
+        }
+
+        Record putLong(long v) {
+            ensure(8).putLong(v);
+            return this;
+        }
+
+        Record putDouble(double v) {
+            ensure(8).putDouble(v);
+            return this;
+        }
+
+        Record putString(String v) {
+            byte[] bytes = v.getBytes(StandardCharsets.UTF_8);
+            putInt(bytes.length);
+            ensure(bytes.length).put(bytes);
+            return this;
+        }
+
+        void writeTo(OutputStream out) throws IOException {
+            out.write(buf.array(), 0, buf.position());
+        }
+
+        private ByteBuffer ensure(int bytes) {
+            if (buf.remaining() < bytes) {
+                ByteBuffer bigger = ByteBuffer.allocate(Math.max(buf.capacity() * 2, buf.position() + bytes));
+                buf.flip();
+                buf = bigger.put(buf);
+            }
+            return buf;
         }
-        return false;
     }
 }
 
-// Simple Payment simulation
-class Payment {
-    static boolean processPayment(double amount) {
-        System.out.println("Processing payment of $" + amount);
-        // Simulate always successful
-        System.out.println("Payment successful.");
-        return true;
+// Which reservations a report covers; unset fields match everything. Check-in dates run from
+// checkInFrom up to (not including) checkInTo.
+class ReservationFilter {
+    LocalDate checkInFrom;
+    LocalDate checkInTo;
+    Boolean paid;
+    RoomType roomType;
+
+    boolean matches(Reservation r) {
+        return (paid == null || r.paymentDone == paid)
+            && (roomType == null || r.room.type == roomType)
+            && (checkInFrom == null || !r.checkInDate.isBefore(checkInFrom))
+            && (checkInTo == null || r.checkInDate.isBefore(checkInTo));
     }
 }
 
-// File IO for persistence
-class FileHandler {
-    static void saveHotelData(Hotel hotel, String filename) throws IOException {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(filename))) {
-            out.writeObject(hotel);
+// Writes reservations one at a time as text, CSV or a JSON array. Fields go straight to the
+// underlying buffered writer instead of through per-reservation Strings, so exporting a large
+// history allocates little and holds nothing but the current reservation.
+class ReservationReport implements Flushable {
+    enum Format { TEXT, CSV, JSON }
+
+    private final Writer out;
+    private final Format format;
+    private long written;
+
+    ReservationReport(Writer out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    long written() {
+        return written;
+    }
+
+    void begin() throws IOException {
+        written = 0;
+        if (format == Format.CSV) out.write("id,name,email,phone,room,type,price_per_night,check_in,check_out,paid,total\n");
+        else if (format == Format.JSON) out.write('[');
+    }
+
+    void write(Reservation r) throws IOException {
+        switch (format) {
+            case TEXT -> writeText(r);
+            case CSV -> writeCsv(r);
+            case JSON -> writeJson(r);
+        }
+        written++;
+    }
+
+    // Writes up to limit reservations from the iterator; returns how many were written
+    int page(Iterator<Reservation> source, int limit) throws IOException {
+        int n = 0;
+        while (n < limit && source.hasNext()) {
+            write(source.next());
+            n++;
+        }
+        return n;
+    }
+
+    void end() throws IOException {
+        if (format == Format.JSON) out.write(written == 0 ? "]\n" : "\n]\n");
+        out.flush();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    // Exports everything the filter selects to a file; returns the number of reservations written
+    static long export(Hotel hotel, ReservationFilter filter, Format format, Path file) throws IOException {
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+             Stream<Reservation> found = hotel.streamReservations(filter)) {
+            ReservationReport report = new ReservationReport(w, format);
+            report.begin();
+            Iterator<Reservation> it = found.iterator();
+            while (it.hasNext()) report.write(it.next());
+            report.end();
+            return report.written();
+        }
+    }
+
+    // Same layout as Reservation.toString()
+    private void writeText(Reservation r) throws IOException {
+        Room room = r.room;
+        out.write("Reservation for ");
+        out.write(r.customer.name);
+        out.write(" in Room ");
+        out.write(Integer.toString(room.roomNumber));
+        out.write(" [");
+        out.write(room.type.name());
+        out.write("] - $");
+        out.write(Double.toString(room.pricePerNight));
+        out.write(room.onMarket ? " per night\nCheck-in: " : " per night - Off market\nCheck-in: ");
+        out.write(r.checkInDate.toString());
+        out.write(", Check-out: ");
+        out.write(r.checkOutDate.toString());
+        out.write(r.paymentDone ? "\nPayment Status: Paid\nTotal Cost: $" : "\nPayment Status: Pending\nTotal Cost: $");
+        out.write(Double.toString(r.getTotalCost()));
+        out.write("\n-------------------------\n");
+    }
+
+    private void writeCsv(Reservation r) throws IOException {
+        out.write(Long.toString(r.id));
+        out.write(',');
+        csvField(r.customer.name);
+        out.write(',');
+        csvField(r.customer.email);
+        out.write(',');
+        csvField(r.customer.phone);
+        out.write(',');
+        out.write(Integer.toString(r.room.roomNumber));
+        out.write(',');
+        out.write(r.room.type.name());
+        out.write(',');
+        out.write(Double.toString(r.room.pricePerNight));
+        out.write(',');
+        out.write(r.checkInDate.toString());
+        out.write(',');
+        out.write(r.checkOutDate.toString());
+        out.write(r.paymentDone ? ",true," : ",false,");
+        out.write(Double.toString(r.getTotalCost()));
+        out.write('\n');
+    }
+
+    // RFC 4180: quote fields holding a separator, quote or line break, doubling embedded quotes
+    private void csvField(String value) throws IOException {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            out.write(value);
+            return;
+        }
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') out.write('"');
+            out.write(c);
+        }
+        out.write('"');
+    }
+
+    private void writeJson(Reservation r) throws IOException {
+        out.write(written == 0 ? "\n  {\"id\":" : ",\n  {\"id\":");
+        out.write(Long.toString(r.id));
+        out.write(",\"name\":");
+        jsonString(r.customer.name);
+        out.write(",\"email\":");
+        jsonString(r.customer.email);
+        out.write(",\"phone\":");
+        jsonString(r.customer.phone);
+        out.write(",\"room\":");
+        out.write(Integer.toString(r.room.roomNumber));
+        out.write(",\"type\":\"");
+        out.write(r.room.type.name());
+        out.write("\",\"pricePerNight\":");
+        out.write(Double.toString(r.room.pricePerNight));
+        out.write(",\"checkIn\":\"");
+        out.write(r.checkInDate.toString());
+        out.write("\",\"checkOut\":\"");
+        out.write(r.checkOutDate.toString());
+        out.write(r.paymentDone ? "\",\"paid\":true,\"total\":" : "\",\"paid\":false,\"total\":");
+        out.write(Double.toString(r.getTotalCost()));
+        out.write('}');
+    }
+
+    private void jsonString(String value) throws IOException {
+        out.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        out.write("\\u00");
+                        out.write(Character.forDigit(c >> 4, 16));
+                        out.write(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        out.write(c);
+                    }
+                }
+            }
+        }
+        out.write('"');
+    }
+}
+
+// Authorizes a batch of payments in one call; ids are idempotency keys, so a retried batch is not charged twice
+interface PaymentGateway {
+    boolean[] authorize(long[] paymentIds, double[] amounts) throws IOException;
+}
+
+// Local stand-in for a card gateway: fixed latency per call, random declines and random call failures
+class SimulatedPaymentGateway implements PaymentGateway {
+    private final long latencyMillis;
+    private final double declineRate;
+    private final double errorRate;
+
+    SimulatedPaymentGateway(long latencyMillis, double declineRate, double errorRate) {
+        this.latencyMillis = latencyMillis;
+        this.declineRate = declineRate;
+        this.errorRate = errorRate;
+    }
+
+    @Override
+    public boolean[] authorize(long[] paymentIds, double[] amounts) throws IOException {
+        try {
+            Thread.sleep(latencyMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Gateway call interrupted");
+        }
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        if (rand.nextDouble() < errorRate) throw new IOException("Gateway unavailable");
+        boolean[] approved = new boolean[amounts.length];
+        for (int i = 0; i < amounts.length; i++) approved[i] = amounts[i] >= 0 && rand.nextDouble() >= declineRate;
+        return approved;
+    }
+}
+
+// Asynchronous payment authorization. Requests queue up and a dispatcher sends them to the gateway in
+// batches of up to maxBatch, waiting at most lingerMillis to fill one, with at most maxInFlight gateway
+// calls running at once. A call that fails or exceeds timeoutMillis is retried with backoff up to
+// maxAttempts times, after which its payments complete as not authorized. A timed-out call is
+// interrupted, and keeps its slot until it actually returns. Payment ids are reservation ids, so a
+// resubmitted payment is the same authorization to the gateway. Results complete on their own
+// threads after the call has given back its slot, so slow dependents (e.g. settling a booking into
+// a journal) never hold up gateway calls.
+class PaymentPipeline implements Closeable {
+    private static final class Pending {
+        final long id;
+        final double amount;
+        final CompletableFuture<Boolean> result = new CompletableFuture<>();
+        int attempts;
+
+        Pending(long id, double amount) {
+            this.id = id;
+            this.amount = amount;
+        }
+    }
+
+    private final PaymentGateway gateway;
+    private final int maxBatch;
+    private final long lingerMillis;
+    private final long timeoutMillis;
+    private final int maxAttempts;
+    private final Semaphore inFlight;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final ExecutorService callers;
+    private final ExecutorService completions = Executors.newCachedThreadPool(daemon("payment-complete"));
+    private final ScheduledExecutorService timers = Executors.newSingleThreadScheduledExecutor(daemon("payment-timer"));
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    PaymentPipeline(PaymentGateway gateway) {
+        this(gateway, 64, 2, 2_000, 3, 16);
+    }
+
+    PaymentPipeline(PaymentGateway gateway, int maxBatch, long lingerMillis, long timeoutMillis, int maxAttempts, int maxInFlight) {
+        this.gateway = gateway;
+        this.maxBatch = maxBatch;
+        this.lingerMillis = lingerMillis;
+        this.timeoutMillis = timeoutMillis;
+        this.maxAttempts = maxAttempts;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.callers = Executors.newFixedThreadPool(maxInFlight, daemon("payment-call"));
+        this.dispatcher = daemon("payment-dispatch").newThread(this::dispatch);
+        dispatcher.start();
+    }
+
+    // Completes with true when authorized, false when declined or the gateway kept failing
+    CompletableFuture<Boolean> authorize(long paymentId, double amount) {
+        if (closed) throw new IllegalStateException("Payment pipeline is closed");
+        Pending pending = new Pending(paymentId, amount);
+        outstanding.incrementAndGet();
+        pending.result.whenComplete((ok, error) -> {
+            if (outstanding.decrementAndGet() == 0) {
+                synchronized (outstanding) {
+                    outstanding.notifyAll();
+                }
+            }
+        });
+        queue.add(pending);
+        return pending.result;
+    }
+
+    // Stops taking payments and waits for the ones already submitted to finish
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (outstanding) {
+            while (outstanding.get() > 0) {
+                try {
+                    outstanding.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
         }
+        dispatcher.interrupt();
+        callers.shutdown();
+        completions.shutdown();
+        timers.shutdown();
     }
 
-    static Hotel loadHotelData(String filename) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(filename))) {
-            return (Hotel) in.readObject();
+    private void dispatch() {
+        List<Pending> batch = new ArrayList<>(maxBatch);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + lingerMillis * 1_000_000L;
+                while (batch.size() < maxBatch) {
+                    if (queue.drainTo(batch, maxBatch - batch.size()) > 0) continue;
+                    long wait = deadline - System.nanoTime();
+                    if (wait <= 0) break;
+                    Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+                inFlight.acquire();
+                send(new ArrayList<>(batch));
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            for (Pending p : batch) p.result.complete(false);
         }
     }
+
+    private void send(List<Pending> batch) {
+        long[] ids = new long[batch.size()];
+        double[] amounts = new double[batch.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = batch.get(i).id;
+            amounts[i] = batch.get(i).amount;
+        }
+        // The permit is released exactly once: by the call when it returns, or by the timeout if the call never started
+        AtomicBoolean started = new AtomicBoolean();
+        CompletableFuture<boolean[]> outcome = new CompletableFuture<>();
+        Future<?> call = callers.submit(() -> {
+            if (!started.compareAndSet(false, true)) return;
+            boolean[] approved = null;
+            Exception failure = null;
+            try {
+                approved = gateway.authorize(ids, amounts);
+            } catch (IOException | RuntimeException e) {
+                failure = e;
+            } finally {
+                inFlight.release();
+            }
+            if (failure == null) outcome.complete(approved);
+            else outcome.completeExceptionally(failure);
+        });
+        ScheduledFuture<?> timeout = timers.schedule(() -> {
+            if (!outcome.completeExceptionally(new TimeoutException("Gateway call exceeded " + timeoutMillis + " ms"))) return;
+            if (started.compareAndSet(false, true)) inFlight.release();
+            else call.cancel(true);
+        }, timeoutMillis, TimeUnit.MILLISECONDS);
+        outcome.whenComplete((approved, error) -> {
+            timeout.cancel(false);
+            if (error == null) {
+                // One task per payment, so each one's dependents run in parallel and off the caller thread
+                for (int i = 0; i < ids.length; i++) {
+                    boolean ok = approved[i];
+                    batch.get(i).result.completeAsync(() -> ok, completions);
+                }
+                return;
+            }
+            for (Pending p : batch) {
+                if (++p.attempts >= maxAttempts) {
+                    p.result.completeAsync(() -> false, completions);
+                } else {
+                    timers.schedule(() -> queue.add(p), 50L << p.attempts, TimeUnit.MILLISECONDS);
+                }
+            }
+        });
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
 }
 
 // Main system controller and UI
 public class HotelReservationSystem {
     private static Scanner scanner = new Scanner(System.in);
     private Hotel hotel;
-    private String dataFile = "hotelData.ser";
+    private HotelJournal store;
+    // The simulated gateway approves at once, so the menu never waits on a pretend network
+    private PaymentPipeline payments = new PaymentPipeline(new SimulatedPaymentGateway(0, 0.0, 0.0));
+    private String dataFile = "hotelData";
+    // Reports stream through one buffered writer instead of a println per line
+    private final Writer console = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+    private static final int PAGE_SIZE = 20;
 
     public static void main(String[] args) {
         new HotelReservationSystem().start();
@@ -155,23 +1808,33 @@ public class HotelReservationSystem {
 
     void start() {
         try {
-            hotel = FileHandler.loadHotelData(dataFile);
+            store = HotelJournal.open(dataFile);
+        } catch (IOException e) {
+            System.out.println("Error opening hotel data: " + e.getMessage());
+            return;
+        }
+        hotel = store.hotel();
+        if (!hotel.rooms.isEmpty()) {
             System.out.println("Loaded existing hotel data.");
-        } catch (Exception e) {
+        } else {
             System.out.println("Starting with new hotel data.");
-            hotel = new Hotel();
             // Add sample rooms
             hotel.addRoom(new Room(101, RoomType.STANDARD, 75));
             hotel.addRoom(new Room(102, RoomType.DELUXE, 125));
             hotel.addRoom(new Room(103, RoomType.SUITE, 250));
         }
+        resumePayments();
         while (true) {
             System.out.println("\n--- Hotel Reservation Menu ---");
             System.out.println("1. Search Rooms");
             System.out.println("2. Book Room");
             System.out.println("3. Cancel Reservation");
             System.out.println("4. View All Reservations");
-            System.out.println("5. Exit");
+            System.out.println("5. Find Reservations by Email");
+            System.out.println("6. View Arrivals for a Date");
+            System.out.println("7. Export Reservations");
+            System.out.println("8. Occupancy & Revenue Report");
+            System.out.println("9. Exit");
             System.out.print("Choose an option: ");
             int choice = Integer.parseInt(scanner.nextLine());
             try {
@@ -180,8 +1843,14 @@ public class HotelReservationSystem {
                     case 2 -> bookRoom();
                     case 3 -> cancelReservation();
                     case 4 -> viewReservations();
-                    case 5 -> {
-                        FileHandler.saveHotelData(hotel, dataFile);
+                    case 5 -> findReservationsByEmail();
+                    case 6 -> viewArrivals();
+                    case 7 -> exportReservations();
+                    case 8 -> viewOccupancy();
+                    case 9 -> {
+                        payments.close();
+                        store.snapshot();
+                        store.close();
                         System.out.println("Data saved. Exiting.");
                         return;
                     }
@@ -196,7 +1865,11 @@ public class HotelReservationSystem {
     void searchRooms() {
         System.out.print("Enter room type to search (STANDARD, DELUXE, SUITE): ");
         RoomType type = RoomType.valueOf(scanner.nextLine().toUpperCase());
-        List<Room> available = hotel.searchAvailableRooms(type);
+        System.out.print("Enter check-in date (YYYY-MM-DD): ");
+        LocalDate checkIn = LocalDate.parse(scanner.nextLine());
+        System.out.print("Enter check-out date (YYYY-MM-DD): ");
+        LocalDate checkOut = LocalDate.parse(scanner.nextLine());
+        List<Room> available = hotel.searchAvailableRooms(type, checkIn, checkOut);
         if (available.isEmpty()) System.out.println("No available rooms found.");
         else {
             System.out.println("Available Rooms:");
@@ -215,7 +1888,11 @@ public class HotelReservationSystem {
 
         System.out.print("Enter room type to book (STANDARD, DELUXE, SUITE): ");
         RoomType type = RoomType.valueOf(scanner.nextLine().toUpperCase());
-        List<Room> available = hotel.searchAvailableRooms(type);
+        System.out.print("Enter check-in date (YYYY-MM-DD): ");
+        LocalDate checkIn = LocalDate.parse(scanner.nextLine());
+        System.out.print("Enter check-out date (YYYY-MM-DD): ");
+        LocalDate checkOut = LocalDate.parse(scanner.nextLine());
+        List<Room> available = hotel.searchAvailableRooms(type, checkIn, checkOut);
         if (available.isEmpty()) {
             System.out.println("No rooms available.");
             return;
@@ -223,48 +1900,58 @@ public class HotelReservationSystem {
         System.out.println("Select room by number: ");
         for (Room r : available) System.out.println(r);
         int roomNum = Integer.parseInt(scanner.nextLine());
-        Room selectedRoom = null;
-        for (Room r : available) {
-            if (r.roomNumber == roomNum) {
-                selectedRoom = r;
-                break;
-            }
-        }
-        if (selectedRoom == null) {
+        Room selectedRoom = hotel.getRoom(roomNum);
+        if (selectedRoom == null || selectedRoom.type != type || !hotel.isAvailable(selectedRoom, checkIn, checkOut)) {
             System.out.println("Invalid room selection.");
             return;
         }
 
-        System.out.print("Enter check-in date (YYYY-MM-DD): ");
-        LocalDate checkIn = LocalDate.parse(scanner.nextLine());
-        System.out.print("Enter check-out date (YYYY-MM-DD): ");
-        LocalDate checkOut = LocalDate.parse(scanner.nextLine());
-
         Reservation reservation = hotel.makeReservation(customer, selectedRoom, checkIn, checkOut);
         if (reservation == null) {
             System.out.println("Room booking failed.");
             return;
         }
-        // Process payment
+        // The room stays held until the payment settles
         double amount = reservation.getTotalCost();
-        boolean paid = Payment.processPayment(amount);
-        reservation.paymentDone = paid;
+        System.out.println("Room held. Processing payment of $" + amount + "...");
+        settle(reservation, payments.authorize(reservation.id, amount));
+    }
 
-        if(paid)
-            System.out.println("Booking confirmed:\n" + reservation);
+    // Bookings still pending when the system last stopped were never settled; send their payments again
+    void resumePayments() {
+        List<Reservation> unpaid = new ArrayList<>();
+        for (Reservation r : hotel.getReservations()) {
+            if (!r.paymentDone) unpaid.add(r);
+        }
+        if (unpaid.isEmpty()) return;
+        System.out.println("Resuming " + unpaid.size() + " pending payment(s).");
+        // Submitted together so they share gateway batches, then settled in order
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(unpaid.size());
+        for (Reservation r : unpaid) results.add(payments.authorize(r.id, r.getTotalCost()));
+        for (int i = 0; i < unpaid.size(); i++) settle(unpaid.get(i), results.get(i));
+    }
+
+    // Waits for the payment on the menu thread, so its outcome is never printed into the middle of a prompt
+    private void settle(Reservation reservation, CompletableFuture<Boolean> payment) {
+        boolean paid = payment.exceptionally(error -> false).join();
+        hotel.settlePayment(reservation, paid);
+        if (paid)
+            System.out.println("\nBooking confirmed:\n" + reservation);
         else
-            System.out.println("Payment failed. Booking cancelled.");
+            System.out.println("\nPayment failed. Booking for room " + reservation.room.roomNumber + " cancelled.");
     }
 
     void cancelReservation() {
         System.out.print("Enter your booking room number to cancel: ");
         int roomNum = Integer.parseInt(scanner.nextLine());
+        Room room = hotel.getRoom(roomNum);
+        List<Reservation> bookings = room == null ? List.of() : hotel.getReservationsForRoom(room);
         Reservation toCancel = null;
-        for (Reservation res : hotel.reservations) {
-            if (res.room.roomNumber == roomNum) {
-                toCancel = res;
-                break;
-            }
+        if (bookings.size() == 1) {
+            toCancel = bookings.get(0);
+        } else if (bookings.size() > 1) {
+            System.out.print("Enter the check-in date of the booking (YYYY-MM-DD): ");
+            toCancel = hotel.findReservation(room, LocalDate.parse(scanner.nextLine()));
         }
         if (toCancel != null) {
             hotel.cancelReservation(toCancel);
@@ -274,15 +1961,94 @@ public class HotelReservationSystem {
         }
     }
 
-    void viewReservations() {
-        if(hotel.reservations.isEmpty()) {
+    void findReservationsByEmail() throws IOException {
+        System.out.print("Enter customer email: ");
+        printReservations(hotel.getReservationsByEmail(scanner.nextLine()));
+    }
+
+    void viewArrivals() throws IOException {
+        System.out.print("Enter arrival date (YYYY-MM-DD): ");
+        printReservations(hotel.getArrivals(LocalDate.parse(scanner.nextLine())));
+    }
+
+    void printReservations(List<Reservation> found) throws IOException {
+        if (found.isEmpty()) {
             System.out.println("No reservations found.");
             return;
         }
-        System.out.println("All Reservations:");
-        for (Reservation r : hotel.reservations) {
-            System.out.println(r);
-            System.out.println("-------------------------");
+        ReservationReport report = new ReservationReport(console, ReservationReport.Format.TEXT);
+        report.page(found.iterator(), Integer.MAX_VALUE);
+        report.flush();
+    }
+
+    // Pages through the reservations matching the entered filters, PAGE_SIZE at a time
+    void viewReservations() throws IOException {
+        ReservationFilter filter = readFilter();
+        try (Stream<Reservation> found = hotel.streamReservations(filter)) {
+            Iterator<Reservation> it = found.iterator();
+            ReservationReport report = new ReservationReport(console, ReservationReport.Format.TEXT);
+            int page = 1;
+            while (true) {
+                if (page == 1 && !it.hasNext()) {
+                    System.out.println("No reservations found.");
+                    return;
+                }
+                console.write("Reservations, page " + page + ":\n");
+                report.page(it, PAGE_SIZE);
+                report.flush();
+                if (!it.hasNext()) return;
+                System.out.print("Press Enter for the next page, or q to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) return;
+                page++;
+            }
+        }
+    }
+
+    void exportReservations() throws IOException {
+        System.out.print("Export format (CSV, JSON): ");
+        ReservationReport.Format format = ReservationReport.Format.valueOf(scanner.nextLine().trim().toUpperCase());
+        if (format == ReservationReport.Format.TEXT) throw new IllegalArgumentException("Choose CSV or JSON");
+        ReservationFilter filter = readFilter();
+        System.out.print("Output file: ");
+        Path file = Paths.get(scanner.nextLine().trim());
+        long n = ReservationReport.export(hotel, filter, format, file);
+        System.out.println("Exported " + n + " reservations to " + file + ".");
+    }
+
+    void viewOccupancy() {
+        System.out.print("Enter first night (YYYY-MM-DD): ");
+        LocalDate from = LocalDate.parse(scanner.nextLine());
+        System.out.print("Enter last night (YYYY-MM-DD): ");
+        LocalDate to = LocalDate.parse(scanner.nextLine()).plusDays(1);
+        System.out.printf("%-9s %10s %10s %10s %12s %9s %9s%n", "Type", "Available", "Sold", "Occupancy", "Revenue", "ADR", "RevPAR");
+        for (RoomType type : RoomType.values()) printOccupancy(type.name(), hotel.summarize(type, from, to));
+        printOccupancy("ALL", hotel.summarize(null, from, to));
+    }
+
+    private static void printOccupancy(String label, OccupancyAnalytics.Summary s) {
+        System.out.printf("%-9s %10d %10d %9.1f%% %12.2f %9.2f %9.2f%n", label, s.roomNightsAvailable, s.roomNightsSold,
+                s.occupancyRate() * 100, s.revenue, s.adr(), s.revPar());
+    }
+
+    // Blank answers leave a filter unset
+    ReservationFilter readFilter() {
+        ReservationFilter filter = new ReservationFilter();
+        System.out.print("Check-in from (YYYY-MM-DD, blank for any): ");
+        String line = scanner.nextLine().trim();
+        if (!line.isEmpty()) filter.checkInFrom = LocalDate.parse(line);
+        System.out.print("Check-in before (YYYY-MM-DD, blank for any): ");
+        line = scanner.nextLine().trim();
+        if (!line.isEmpty()) filter.checkInTo = LocalDate.parse(line);
+        System.out.print("Payment status (PAID, PENDING, blank for any): ");
+        line = scanner.nextLine().trim();
+        if (!line.isEmpty()) {
+            if (line.equalsIgnoreCase("paid")) filter.paid = true;
+            else if (line.equalsIgnoreCase("pending")) filter.paid = false;
+            else throw new IllegalArgumentException("Unknown payment status: " + line);
         }
+        System.out.print("Room type (STANDARD, DELUXE, SUITE, blank for any): ");
+        line = scanner.nextLine().trim();
+        if (!line.isEmpty()) filter.roomType = RoomType.valueOf(line.toUpperCase());
+        return filter;
     }
 }
@@ -1,219 +1,2952 @@
 //Stock Trading Platform
 
 import java.io.*;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
 
+// Told about each new price of a stock it subscribed to
+interface PriceListener {
+    void priceChanged(Stock stock);
+
+    // The market listed a replacement under the same symbol; subscribed listeners move over to it
+    default void stockReplaced(Stock replacement) {
+        replacement.subscribe(this);
+    }
+}
+
+// Once listed, a stock's price lives in its market's price array under the stock's symbol id;
+// the price field only holds it for stocks that are not listed.
 class Stock implements Serializable {
     String symbol;
     String name;
+    volatile double price;
+    transient Market market;         // set when listed
+    transient int id = -1;           // dense symbol id in market
+    transient volatile OrderBook book; // created on first use by market
+    transient volatile PriceHistory history; // set while the market tracks price history
+
+    Stock(String symbol, String name, double price) {
+        this.symbol = symbol;
+        this.name = name;
+        this.price = price;
+    }
+
+    private transient volatile PriceListener[] listeners = NO_LISTENERS;
+    private static final PriceListener[] NO_LISTENERS = new PriceListener[0];
+
+    // Publishes the new price, then tells every subscribed position
+    void updatePrice(double newPrice) {
+        Market listedIn = market;
+        if (listedIn == null) price = newPrice;
+        else listedIn.setPrice(id, newPrice);
+        PriceHistory recorder = history;
+        if (recorder != null) recorder.tick(PriceHistory.now(), newPrice);
+        PriceListener[] current = listeners;
+        if (current == null) return; // a deserialized copy, not a listed stock
+        for (PriceListener listener : current) listener.priceChanged(this);
+    }
+
+    synchronized void subscribe(PriceListener listener) {
+        PriceListener[] grown = Arrays.copyOf(listeners, listeners.length + 1);
+        grown[listeners.length] = listener;
+        listeners = grown;
+    }
+
+    synchronized void unsubscribe(PriceListener listener) {
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i] == listener) {
+                PriceListener[] shrunk = Arrays.copyOf(listeners, listeners.length - 1);
+                System.arraycopy(listeners, i + 1, shrunk, i, listeners.length - i - 1);
+                listeners = shrunk;
+                return;
+            }
+        }
+    }
+
+    // Moves every subscribed listener to the stock that replaced this one in its market
+    void handOver(Stock replacement) {
+        PriceListener[] moved;
+        synchronized (this) {
+            moved = listeners;
+            listeners = NO_LISTENERS;
+        }
+        for (PriceListener listener : moved) listener.stockReplaced(replacement);
+    }
+
+    double getPrice() {
+        Market listedIn = market;
+        return listedIn == null ? price : listedIn.price(id);
+    }
+
+    // Adds traded volume at the given price to the price history, if one is kept
+    void recordTrade(double tradePrice, int quantity) {
+        PriceHistory recorder = history;
+        if (recorder != null) recorder.trade(PriceHistory.now(), tradePrice, quantity);
+    }
+
+    @Override
+    public String toString() {
+        return symbol + " (" + name + ") - $" + String.format("%.2f", getPrice());
+    }
+}
+
+// One ledger row, materialized for display
+class Transaction {
+    enum Type { BUY, SELL }
+
+    String symbol;
+    int quantity;
     double price;
+    Type type;
+    LocalDateTime timestamp;
+
+    Transaction(String symbol, int qty, double price, Type type, LocalDateTime timestamp) {
+        this.symbol = symbol;
+        this.quantity = qty;
+        this.price = price;
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s %d shares of %s at $%.2f on %s",
+                             type, quantity, symbol, price, timestamp);
+    }
+}
+
+// A user's fills as parallel primitive columns (symbol, quantity, price in cents, side, time in
+// epoch nanos) instead of one object per fill. Rows are appended in time order, so time ranges are
+// found by binary search; each symbol also keeps the list of its rows for per-symbol queries.
+// Aggregates scan the columns; average cost is carried forward as rows are appended, so a range is
+// summarized from its own rows. Symbols are numbered per ledger, so saved ledgers don't depend on
+// any market's ids, and matched case-insensitively. Guarded by the owning User's monitor.
+class TradeLedger implements Serializable {
+    private static final long serialVersionUID = -6237684509461339983L; // as computed before it was declared
+
+    // Totals for one symbol over a set of rows
+    static final class SymbolSummary {
+        final String symbol;
+        long bought;         // shares
+        long sold;
+        long notionalCents;  // traded value, both sides
+        long realizedCents;  // at average cost
+        long position;
+
+        SymbolSummary(String symbol) {
+            this.symbol = symbol;
+        }
+
+        double getRealizedPnl() {
+            return realizedCents / 100.0;
+        }
+
+        double getNotional() {
+            return notionalCents / 100.0;
+        }
+    }
+
+    private int size;
+    private int[] symbol = new int[16];
+    private int[] quantity = new int[16];
+    private long[] priceCents = new long[16];
+    private boolean[] buy = new boolean[16];
+    private long[] epochNanos = new long[16];
+    // Derived columns, rebuilt after deserialization: realized P&L of the row and the symbol's
+    // position after it, both at average cost
+    private transient long[] realizedCents;
+    private transient long[] heldAfter;
+    private transient long[] held;  // by ledger symbol id, after the last row
+    private transient long[] cost;
+
+    private final List<String> symbols = new ArrayList<>(); // ledger symbol id -> symbol as first seen
+    private transient Map<String, Integer> symbolIds;       // by key(symbol)
+    private transient int[] byMarketId = new int[0];  // market symbol id -> ledger id + 1
+    private transient int[][] rowsBySymbol;
+    private transient int[] rowCounts;
+
+    TradeLedger() {
+        rebuildIndexes();
+    }
+
+    int size() {
+        return size;
+    }
+
+    void append(Stock stock, Transaction.Type side, int qty, double price) {
+        append(stock, side, qty, price, now());
+    }
+
+    void append(Stock stock, Transaction.Type side, int qty, double price, long nanos) {
+        append(ledgerId(stock), side == Transaction.Type.BUY, qty, Portfolio.cents(price), nanos);
+    }
+
+    // Re-appends a stored row; times must not go backwards
+    void append(String symbolName, Transaction.Type side, int qty, long cents, long nanos) {
+        append(ledgerId(symbolName), side == Transaction.Type.BUY, qty, cents, nanos);
+    }
+
+    Transaction get(int row) {
+        long nanos = epochNanos[row];
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, nanos), ZoneId.systemDefault());
+        return new Transaction(symbols.get(symbol[row]), quantity[row], priceCents[row] / 100.0,
+                buy[row] ? Transaction.Type.BUY : Transaction.Type.SELL, time);
+    }
+
+    String symbolAt(int row) {
+        return symbols.get(symbol[row]);
+    }
+
+    int quantityAt(int row) {
+        return quantity[row];
+    }
+
+    long priceCentsAt(int row) {
+        return priceCents[row];
+    }
+
+    boolean isBuy(int row) {
+        return buy[row];
+    }
+
+    long epochNanosAt(int row) {
+        return epochNanos[row];
+    }
+
+    // First row at or after the time; size() if none
+    int firstRowAtOrAfter(long nanos) {
+        int lo = 0, hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochNanos[mid] < nanos) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    // Rows of a symbol with times in [fromNanos, toNanos), in time order
+    int[] rowsFor(String symbolName, long fromNanos, long toNanos) {
+        Integer id = symbolIds.get(key(symbolName));
+        if (id == null) return new int[0];
+        int[] rows = rowsBySymbol[id];
+        int count = rowCounts[id];
+        int first = lowerBound(rows, count, fromNanos);
+        int end = lowerBound(rows, count, toNanos);
+        return Arrays.copyOfRange(rows, first, Math.max(first, end));
+    }
+
+    // Per-symbol volume, notional and realized P&L (average cost) over rows [fromRow, toRow)
+    List<SymbolSummary> summarize(int fromRow, int toRow) {
+        SymbolSummary[] bySymbol = new SymbolSummary[symbols.size()];
+        for (int row = fromRow; row < toRow; row++) {
+            int s = symbol[row];
+            long q = quantity[row];
+            SymbolSummary summary = bySymbol[s];
+            if (summary == null) bySymbol[s] = summary = new SymbolSummary(symbols.get(s));
+            if (buy[row]) summary.bought += q;
+            else summary.sold += q;
+            summary.notionalCents += q * priceCents[row];
+            summary.realizedCents += realizedCents[row];
+            summary.position = heldAfter[row];
+        }
+        List<SymbolSummary> result = new ArrayList<>();
+        for (SymbolSummary summary : bySymbol) if (summary != null) result.add(summary);
+        return result;
+    }
+
+    // The same over the rows with times in [fromNanos, toNanos)
+    List<SymbolSummary> summarizeBetween(long fromNanos, long toNanos) {
+        int from = firstRowAtOrAfter(fromNanos);
+        return summarize(from, Math.max(from, firstRowAtOrAfter(toNanos)));
+    }
+
+    List<SymbolSummary> summarize() {
+        return summarize(0, size);
+    }
+
+    // Realized P&L of every sell, at average cost
+    double getRealizedPnl() {
+        long cents = 0;
+        for (SymbolSummary s : summarize()) cents += s.realizedCents;
+        return cents / 100.0;
+    }
+
+    private void append(int id, boolean isBuy, int qty, long cents, long nanos) {
+        if (size > 0 && nanos < epochNanos[size - 1]) nanos = epochNanos[size - 1];
+        if (size == symbol.length) {
+            int n = size * 2;
+            symbol = Arrays.copyOf(symbol, n);
+            quantity = Arrays.copyOf(quantity, n);
+            priceCents = Arrays.copyOf(priceCents, n);
+            buy = Arrays.copyOf(buy, n);
+            epochNanos = Arrays.copyOf(epochNanos, n);
+            realizedCents = Arrays.copyOf(realizedCents, n);
+            heldAfter = Arrays.copyOf(heldAfter, n);
+        }
+        symbol[size] = id;
+        quantity[size] = qty;
+        priceCents[size] = cents;
+        buy[size] = isBuy;
+        epochNanos[size] = nanos;
+        index(size);
+        size++;
+    }
+
+    // Adds a filled row to its symbol's rows and carries the symbol's average cost through it
+    private void index(int row) {
+        int s = symbol[row];
+        if (rowCounts[s] == rowsBySymbol[s].length) rowsBySymbol[s] = Arrays.copyOf(rowsBySymbol[s], rowCounts[s] * 2);
+        rowsBySymbol[s][rowCounts[s]++] = row;
+        long q = quantity[row];
+        long value = q * priceCents[row];
+        long realized = 0;
+        if (buy[row]) {
+            held[s] += q;
+            cost[s] += value;
+        } else {
+            long basis = held[s] == 0 ? 0 : cost[s] * q / held[s];
+            realized = value - basis;
+            held[s] -= q;
+            cost[s] -= basis;
+        }
+        realizedCents[row] = realized;
+        heldAfter[row] = held[s];
+    }
+
+    private int ledgerId(Stock stock) {
+        if (stock.id < 0) return ledgerId(stock.symbol);
+        if (stock.id >= byMarketId.length) byMarketId = Arrays.copyOf(byMarketId, Math.max(stock.id + 1, byMarketId.length * 2));
+        int cached = byMarketId[stock.id] - 1;
+        // The cache is per market; verify in case this ledger sees stocks of more than one
+        if (cached >= 0 && symbols.get(cached).equalsIgnoreCase(stock.symbol)) return cached;
+        int id = ledgerId(stock.symbol);
+        byMarketId[stock.id] = id + 1;
+        return id;
+    }
+
+    private int ledgerId(String symbolName) {
+        Integer id = symbolIds.get(key(symbolName));
+        if (id != null) return id;
+        int added = symbols.size();
+        symbols.add(symbolName);
+        symbolIds.put(key(symbolName), added);
+        rowsBySymbol = Arrays.copyOf(rowsBySymbol, added + 1);
+        rowsBySymbol[added] = new int[4];
+        rowCounts = Arrays.copyOf(rowCounts, added + 1);
+        held = Arrays.copyOf(held, added + 1);
+        cost = Arrays.copyOf(cost, added + 1);
+        return added;
+    }
+
+    // Symbols are looked up case-insensitively, like Market.getStock
+    private static String key(String symbolName) {
+        return symbolName.toUpperCase(Locale.ROOT);
+    }
+
+    private int lowerBound(int[] rows, int count, long nanos) {
+        int lo = 0, hi = count;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (epochNanos[rows[mid]] < nanos) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+
+    static long now() {
+        Instant t = Instant.now();
+        return t.getEpochSecond() * 1_000_000_000L + t.getNano();
+    }
+
+    private void rebuildIndexes() {
+        int n = symbols.size();
+        symbolIds = new HashMap<>();
+        byMarketId = new int[0];
+        rowsBySymbol = new int[n][];
+        rowCounts = new int[n];
+        held = new long[n];
+        cost = new long[n];
+        realizedCents = new long[symbol.length];
+        heldAfter = new long[symbol.length];
+        for (int s = 0; s < n; s++) {
+            symbolIds.putIfAbsent(key(symbols.get(s)), s);
+            rowsBySymbol[s] = new int[4];
+        }
+        for (int row = 0; row < size; row++) index(row);
+    }
+
+    // Writes only the filled part of each column, as copies, so serializing never swaps out the live
+    // arrays under an append. Hold the owning user's monitor for a consistent copy.
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        int n = Math.max(size, 1);
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("size", size);
+        fields.put("symbol", Arrays.copyOf(symbol, n));
+        fields.put("quantity", Arrays.copyOf(quantity, n));
+        fields.put("priceCents", Arrays.copyOf(priceCents, n));
+        fields.put("buy", Arrays.copyOf(buy, n));
+        fields.put("epochNanos", Arrays.copyOf(epochNanos, n));
+        fields.put("symbols", symbols);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        rebuildIndexes();
+    }
+}
+
+// Marked-to-market holdings. Each position subscribes to its stock and re-marks itself on every
+// price change, adjusting the portfolio's running value by quantity times the price move, so value
+// and P&L are O(1) reads however many positions there are. Money is kept in whole cents so the
+// running totals never drift. Trades are guarded by the owning User's monitor; re-marks run on the
+// pricing thread and only take the one position's lock.
+class Portfolio implements Serializable {
+    private transient PositionTable positions = new PositionTable(); // by symbol id
+    private transient Market market;
+    private Position[] saved;    // positions while serialized, until attach
+    private long costCents;      // cost basis of open positions, at average cost
+    private long realizedCents;  // realized P&L of sells
+    private transient AtomicLong valueCents = new AtomicLong();
+    private transient boolean suspended; // not listening to prices; see suspend()
+
+    // One symbol's holding; listens to its stock while it has shares and the portfolio is not suspended
+    static final class Position implements Serializable, PriceListener {
+        private static final long serialVersionUID = -4467793424172534495L; // as computed before it was declared
+
+        final String symbol;
+        private int quantity;
+        private long costCents;
+        private transient Portfolio owner;
+        private transient Stock stock;
+        private transient long markCents; // price the position was last valued at
+
+        Position(String symbol) {
+            this.symbol = symbol;
+        }
+
+        int getQuantity() {
+            return quantity;
+        }
+
+        long getCostCents() {
+            return costCents;
+        }
+
+        synchronized double getMark() {
+            return markCents / 100.0;
+        }
+
+        double getAverageCost() {
+            return quantity == 0 ? 0.0 : costCents / 100.0 / quantity;
+        }
+
+        @Override
+        public synchronized void priceChanged(Stock changed) {
+            long mark = cents(changed.getPrice());
+            if (mark != markCents) {
+                owner.valueCents.addAndGet(quantity * (mark - markCents));
+                markCents = mark;
+            }
+        }
+
+        // Re-marks to the current price, then applies a change in shares at that mark
+        private synchronized void adjust(int delta) {
+            long mark = cents(stock.getPrice());
+            owner.valueCents.addAndGet(quantity * (mark - markCents) + delta * mark);
+            markCents = mark;
+            quantity += delta;
+            stock.market.addExposure(stock.id, delta);
+        }
+
+        private synchronized void bind(Portfolio owner, Stock stock) {
+            this.owner = owner;
+            this.stock = stock;
+            markCents = cents(stock.getPrice());
+            owner.valueCents.addAndGet(quantity * markCents);
+            stock.market.addExposure(stock.id, quantity);
+            if (!owner.suspended) stock.subscribe(this);
+        }
+
+        // Shares, cost and mark carry over; the replacement shares the symbol id and price slot
+        @Override
+        public synchronized void stockReplaced(Stock replacement) {
+            if (stock == null) return; // unbound while being handed over
+            stock = replacement;
+            replacement.subscribe(this);
+            priceChanged(replacement);
+        }
+
+        private synchronized void suspend() {
+            stock.unsubscribe(this);
+        }
+
+        // Subscribes before re-marking, so no price change in between is missed. The stock may have
+        // been replaced while suspended, so the one listed now is looked up by id.
+        private synchronized void resume() {
+            stock = stock.market.getStock(stock.id);
+            stock.subscribe(this);
+            priceChanged(stock);
+        }
+
+        private synchronized void unbind() {
+            stock.unsubscribe(this);
+            owner.valueCents.addAndGet(-quantity * markCents);
+            stock.market.addExposure(stock.id, -quantity);
+            stock = null;
+        }
+    }
+
+    // The stock must be listed, in the same market as the portfolio's other positions
+    void requireListed(Stock stock) {
+        if (stock.market == null) throw new IllegalArgumentException(stock.symbol + " is not listed in a market");
+        if (market != null && stock.market != market) {
+            throw new IllegalArgumentException(stock.symbol + " is listed in a different market");
+        }
+    }
+
+    void addStock(Stock stock, int quantity, double price) {
+        requireListed(stock);
+        Position position = positions.get(stock.id);
+        if (position == null) {
+            position = new Position(stock.symbol);
+            positions.put(stock.id, position);
+            market = stock.market;
+            position.bind(this, stock);
+        }
+        position.adjust(quantity);
+        long cost = quantity * cents(price);
+        position.costCents += cost;
+        costCents += cost;
+    }
+
+    boolean removeStock(Stock stock, int quantity, double price) {
+        Position position = positions.get(stock.id);
+        int owned = position == null ? 0 : position.quantity;
+        if (quantity > owned) return false;
+        long basis = position.costCents * quantity / owned;
+        position.costCents -= basis;
+        costCents -= basis;
+        realizedCents += quantity * cents(price) - basis;
+        position.adjust(-quantity);
+        if (position.quantity == 0) {
+            position.unbind();
+            positions.remove(stock.id);
+        }
+        return true;
+    }
+
+    int getQuantity(Stock stock) {
+        Position position = positions.get(stock.id);
+        return position == null ? 0 : position.quantity;
+    }
+
+    int getQuantity(String symbol) {
+        int id = market == null ? -1 : market.symbolId(symbol);
+        Position position = id < 0 ? null : positions.get(id);
+        return position == null ? 0 : position.quantity;
+    }
+
+    List<Position> getPositions() {
+        return Arrays.asList(positions.toArray());
+    }
+
+    // Current market value of all positions
+    double getValue() {
+        return valueCents.get() / 100.0;
+    }
+
+    double getUnrealizedPnl() {
+        return (valueCents.get() - costCents) / 100.0;
+    }
+
+    double getRealizedPnl() {
+        return realizedCents / 100.0;
+    }
+
+    long getRealizedCents() {
+        return realizedCents;
+    }
+
+    long getValueCents() {
+        return valueCents.get();
+    }
+
+    // Rebuilds a stored portfolio; attach() then binds the positions to a market
+    void restore(long realizedCents, List<Position> stored) {
+        this.realizedCents = realizedCents;
+        costCents = 0;
+        for (Position p : stored) costCents += p.costCents;
+        saved = stored.toArray(new Position[0]);
+    }
+
+    static Position restoredPosition(String symbol, int quantity, long costCents) {
+        Position p = new Position(symbol);
+        p.quantity = quantity;
+        p.costCents = costCents;
+        return p;
+    }
+
+    // Binds loaded positions to the market's live stocks and values them at current prices
+    void attach(Market market) {
+        this.market = market;
+        if (saved == null) return;
+        for (Position position : saved) {
+            Stock stock = market.getStock(position.symbol);
+            if (stock == null) {
+                // Delisted since it was saved: drop it from the book
+                costCents -= position.costCents;
+            } else {
+                positions.put(stock.id, position);
+                position.bind(this, stock);
+            }
+        }
+        saved = null;
+    }
+
+    // Drops the positions' price listeners while the account is idle, so price updates stop fanning out
+    // to it; the shares still count in the market's exposure. resume() listens again and re-marks.
+    // Call with the owning user's monitor held, like trades.
+    void suspend() {
+        if (suspended) return;
+        suspended = true;
+        for (Position position : positions.toArray()) if (position.stock != null) position.suspend();
+    }
+
+    void resume() {
+        if (!suspended) return;
+        suspended = false;
+        for (Position position : positions.toArray()) if (position.stock != null) position.resume();
+    }
+
+    // Stops listening to prices and takes the shares out of the market's exposure; call when the
+    // account is no longer in use
+    void detach() {
+        for (Position position : positions.toArray()) if (position.stock != null) position.unbind();
+    }
+
+    void printPortfolio() {
+        if (positions.size == 0) {
+            System.out.println("Portfolio is empty.");
+            return;
+        }
+        System.out.println("Portfolio holdings:");
+        for (Position p : positions.toArray()) {
+            double mark = p.getMark();
+            System.out.printf("%s: %d shares @ $%.2f each (Total: $%.2f, avg cost $%.2f)%n",
+                    p.symbol, p.quantity, mark, mark * p.quantity, p.getAverageCost());
+        }
+        System.out.printf("Total portfolio value: $%.2f%n", getValue());
+        System.out.printf("Unrealized P&L: $%.2f, realized P&L: $%.2f%n", getUnrealizedPnl(), getRealizedPnl());
+    }
+
+    static long cents(double price) {
+        return Math.round(price * 100);
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        boolean attached = saved == null;
+        if (attached) saved = positions.toArray();
+        out.defaultWriteObject();
+        if (attached) saved = null;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        positions = new PositionTable();
+        valueCents = new AtomicLong();
+    }
+
+    // Symbol id to position, open addressing with linear probing and backward-shift deletion
+    private static final class PositionTable {
+        private int[] keys = new int[16]; // symbol id + 1; 0 marks an empty bucket
+        private Position[] values = new Position[16];
+        int size;
+
+        Position get(int id) {
+            int mask = keys.length - 1;
+            for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+                if (keys[i] == id + 1) return values[i];
+                if (keys[i] == 0) return null;
+            }
+        }
+
+        void put(int id, Position position) {
+            if (size * 2 >= keys.length) grow();
+            int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            while (keys[i] != 0 && keys[i] != id + 1) i = (i + 1) & mask;
+            if (keys[i] == 0) size++;
+            keys[i] = id + 1;
+            values[i] = position;
+        }
+
+        void remove(int id) {
+            int mask = keys.length - 1;
+            int i = hash(id) & mask;
+            while (keys[i] != id + 1) {
+                if (keys[i] == 0) return;
+                i = (i + 1) & mask;
+            }
+            size--;
+            for (int j = (i + 1) & mask; keys[j] != 0; j = (j + 1) & mask) {
+                int home = hash(keys[j] - 1) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    i = j;
+                }
+            }
+            keys[i] = 0;
+            values[i] = null;
+        }
+
+        Position[] toArray() {
+            Position[] all = new Position[size];
+            int n = 0;
+            for (int i = 0; i < keys.length; i++) if (keys[i] != 0) all[n++] = values[i];
+            return all;
+        }
+
+        private void grow() {
+            int[] oldKeys = keys;
+            Position[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new Position[oldKeys.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) if (oldKeys[i] != 0) put(oldKeys[i] - 1, oldValues[i]);
+        }
+
+        private static int hash(int id) {
+            int h = id * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
+
+// A user's balance, portfolio and history only change together under the user's monitor, so each
+// account is consistent on its own while different users trade in parallel.
+class User implements Serializable {
+    String username;
+    double balance;
+    Portfolio portfolio = new Portfolio();
+    TradeLedger transactions = new TradeLedger(); // null until history() reads it from the store
+    transient AccountStore store;                 // persists every fill when set
+    transient RiskLimits limits = RiskLimits.NONE; // set per session, never stored
+
+    User(String username, double initialBalance) {
+        this.username = username;
+        this.balance = initialBalance;
+    }
+
+    // Buys at the given price, which the caller read once from the market
+    synchronized OrderResult buyStock(Stock stock, int quantity, double price) {
+        double cost = price * quantity;
+        if (cost > balance) return OrderResult.rejected(OrderResult.Status.INSUFFICIENT_FUNDS, Transaction.Type.BUY, stock.symbol, quantity);
+        OrderResult.Status breach = limits.check(this, stock, Transaction.Type.BUY, quantity, price);
+        if (breach != null) return OrderResult.rejected(breach, Transaction.Type.BUY, stock.symbol, quantity);
+        portfolio.requireListed(stock);
+        long nanos = logFill(stock, Transaction.Type.BUY, quantity, price, balance - cost);
+        balance -= cost;
+        portfolio.addStock(stock, quantity, price);
+        fillApplied(stock, Transaction.Type.BUY, quantity, price, nanos);
+        return OrderResult.filled(Transaction.Type.BUY, stock.symbol, quantity, price);
+    }
+
+    synchronized OrderResult sellStock(Stock stock, int quantity, double price) {
+        OrderResult.Status breach = limits.check(this, stock, Transaction.Type.SELL, quantity, price);
+        if (breach != null) return OrderResult.rejected(breach, Transaction.Type.SELL, stock.symbol, quantity);
+        if (portfolio.getQuantity(stock) < quantity) {
+            return OrderResult.rejected(OrderResult.Status.INSUFFICIENT_SHARES, Transaction.Type.SELL, stock.symbol, quantity);
+        }
+        double revenue = price * quantity;
+        long nanos = logFill(stock, Transaction.Type.SELL, quantity, price, balance + revenue);
+        portfolio.removeStock(stock, quantity, price);
+        balance += revenue;
+        fillApplied(stock, Transaction.Type.SELL, quantity, price, nanos);
+        return OrderResult.filled(Transaction.Type.SELL, stock.symbol, quantity, price);
+    }
+
+    // A fill is logged before it is applied, so a failed write leaves the account as it was
+    private long logFill(Stock stock, Transaction.Type side, int quantity, double price, double balanceAfter) {
+        long nanos = TradeLedger.now();
+        if (store != null) store.tradeExecuted(stock.symbol, side, quantity, price, nanos, balanceAfter);
+        return nanos;
+    }
+
+    private void fillApplied(Stock stock, Transaction.Type side, int quantity, double price, long nanos) {
+        if (transactions != null) transactions.append(stock, side, quantity, price, nanos);
+        if (store != null) store.fillApplied(this);
+    }
+
+    // Re-applies a stored fill while loading; balance is restored as recorded
+    void replayFill(Stock stock, Transaction.Type side, int quantity, double price, double balanceAfter) {
+        if (stock != null) {
+            if (side == Transaction.Type.BUY) portfolio.addStock(stock, quantity, price);
+            else portfolio.removeStock(stock, quantity, price);
+        }
+        balance = balanceAfter;
+    }
+
+    // Full trade history; a loaded account reads it from its store on first use
+    synchronized TradeLedger history() {
+        if (transactions == null) transactions = store.readHistory();
+        return transactions;
+    }
+
+    synchronized void printTransactions() {
+        TradeLedger transactions = history();
+        if (transactions.size() == 0) System.out.println("No transactions yet.");
+        else {
+            System.out.println("Transaction History:");
+            for (int row = 0; row < transactions.size(); row++) System.out.println(transactions.get(row));
+            System.out.println("By symbol:");
+            for (TradeLedger.SymbolSummary s : transactions.summarize()) {
+                System.out.printf("%s: bought %d, sold %d, holding %d, traded $%.2f, realized P&L $%.2f%n",
+                        s.symbol, s.bought, s.sold, s.position, s.getNotional(), s.getRealizedPnl());
+            }
+        }
+    }
+
+    synchronized void printPortfolio() {
+        portfolio.printPortfolio();
+        System.out.printf("Available balance: $%.2f%n", balance);
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        limits = RiskLimits.NONE;
+    }
+}
+
+// Outcome of one order; trades never print, so callers decide how to report it
+class OrderResult {
+    enum Status {
+        FILLED, UNKNOWN_SYMBOL, INVALID_QUANTITY, INSUFFICIENT_FUNDS, INSUFFICIENT_SHARES,
+        POSITION_LIMIT, NOTIONAL_LIMIT, CONCENTRATION_LIMIT
+    }
+
+    final Status status;
+    final Transaction.Type side;
+    final String symbol;
+    final int quantity;
+    final double price; // execution price; 0 when rejected
+
+    private OrderResult(Status status, Transaction.Type side, String symbol, int quantity, double price) {
+        this.status = status;
+        this.side = side;
+        this.symbol = symbol;
+        this.quantity = quantity;
+        this.price = price;
+    }
+
+    static OrderResult filled(Transaction.Type side, String symbol, int quantity, double price) {
+        return new OrderResult(Status.FILLED, side, symbol, quantity, price);
+    }
+
+    static OrderResult rejected(Status status, Transaction.Type side, String symbol, int quantity) {
+        return new OrderResult(status, side, symbol, quantity, 0);
+    }
+
+    boolean isFilled() {
+        return status == Status.FILLED;
+    }
+
+    @Override
+    public String toString() {
+        return switch (status) {
+            case FILLED -> String.format("%s %d shares of %s at $%.2f",
+                    side == Transaction.Type.BUY ? "Bought" : "Sold", quantity, symbol, price);
+            case UNKNOWN_SYMBOL -> "Stock not found.";
+            case INVALID_QUANTITY -> "Quantity must be positive.";
+            case INSUFFICIENT_FUNDS -> "Insufficient balance to buy.";
+            case INSUFFICIENT_SHARES -> "Not enough shares to sell.";
+            case POSITION_LIMIT -> "Order would exceed the position limit for this stock.";
+            case NOTIONAL_LIMIT -> "Order exceeds the maximum order value.";
+            case CONCENTRATION_LIMIT -> "Order would put too much of the account in one stock.";
+        };
+    }
+}
+
+// Pre-trade limits for one account, checked under the user's monitor just before a fill so the check
+// and the fill are atomic. Everything it reads is kept current incrementally (holdings by symbol id,
+// portfolio value), so a check is a handful of integer operations with no allocation.
+class RiskLimits {
+    static final RiskLimits NONE = new RiskLimits(Integer.MAX_VALUE, Long.MAX_VALUE / 100, 1.0);
+
+    final int maxPosition;           // shares of any one symbol
+    final long maxOrderNotionalCents; // value of any one order
+    final int maxConcentrationBps;   // one symbol's share of equity (cash + holdings), in basis points
+
+    RiskLimits(int maxPosition, double maxOrderNotional, double maxConcentration) {
+        if (maxPosition <= 0 || !(maxOrderNotional > 0) || !(maxConcentration > 0) || maxConcentration > 1) {
+            throw new IllegalArgumentException("Limits must be positive and concentration at most 1");
+        }
+        this.maxPosition = maxPosition;
+        this.maxOrderNotionalCents = Portfolio.cents(maxOrderNotional);
+        this.maxConcentrationBps = (int) Math.round(maxConcentration * 10_000);
+    }
+
+    // Parses "maxPosition,maxOrderNotional,maxConcentration", e.g. "10000,50000,0.25"
+    static RiskLimits parse(String spec) {
+        String[] parts = spec.split(",");
+        if (parts.length != 3) throw new IllegalArgumentException("Expected maxPosition,maxOrderNotional,maxConcentration");
+        try {
+            return new RiskLimits(Integer.parseInt(parts[0].trim()), Double.parseDouble(parts[1].trim()), Double.parseDouble(parts[2].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad limit: " + e.getMessage());
+        }
+    }
+
+    // The reason the order must be rejected, or null if it may fill. Sells only ever reduce a long
+    // position, so they are never limited; whether the shares are there is the seller's check.
+    OrderResult.Status check(User user, Stock stock, Transaction.Type side, int quantity, double price) {
+        if (side == Transaction.Type.SELL) return null;
+        long priceCents = Portfolio.cents(price);
+        if (productExceeds(quantity, priceCents, maxOrderNotionalCents, 1)) return OrderResult.Status.NOTIONAL_LIMIT;
+        long position = (long) user.portfolio.getQuantity(stock) + quantity;
+        if (position > maxPosition) return OrderResult.Status.POSITION_LIMIT;
+        if (maxConcentrationBps < 10_000) {
+            // Buying at market turns cash into stock, so equity is the same before and after the fill.
+            // A position worth more than a long can hold exceeds any equity.
+            long equity = Portfolio.cents(user.balance) + user.portfolio.getValueCents();
+            long value = position * priceCents;
+            if (Math.multiplyHigh(position, priceCents) != 0 || value < 0 || productExceeds(value, 10_000, maxConcentrationBps, equity)) {
+                return OrderResult.Status.CONCENTRATION_LIMIT;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("max position %d, max order $%.2f, max concentration %.2f%%",
+                maxPosition, maxOrderNotionalCents / 100.0, maxConcentrationBps / 100.0);
+    }
+
+    // a * b > c * d for non-negative a, b, c, d, compared as 128-bit products so nothing overflows
+    private static boolean productExceeds(long a, long b, long c, long d) {
+        long high = Math.multiplyHigh(a, b);
+        long otherHigh = Math.multiplyHigh(c, d);
+        if (high != otherHigh) return high > otherHigh;
+        return Long.compareUnsigned(a * b, c * d) > 0;
+    }
+}
+
+// Executes market orders for any number of users at once. Each order reads its stock's price once
+// and fills the whole quantity at that snapshot, even while prices move; the fill then applies to
+// the user's account under that user's monitor only, so traders never wait on each other.
+class OrderEngine {
+    private final Market market;
+
+    OrderEngine(Market market) {
+        this.market = market;
+    }
+
+    OrderResult buy(User user, String symbol, int quantity) {
+        return execute(user, Transaction.Type.BUY, symbol, quantity);
+    }
+
+    OrderResult sell(User user, String symbol, int quantity) {
+        return execute(user, Transaction.Type.SELL, symbol, quantity);
+    }
+
+    OrderResult execute(User user, Transaction.Type side, String symbol, int quantity) {
+        Stock stock = market.getStock(symbol);
+        if (stock == null) return OrderResult.rejected(OrderResult.Status.UNKNOWN_SYMBOL, side, symbol, quantity);
+        if (quantity <= 0) return OrderResult.rejected(OrderResult.Status.INVALID_QUANTITY, side, stock.symbol, quantity);
+        double price = stock.getPrice();
+        OrderResult result = side == Transaction.Type.BUY ? user.buyStock(stock, quantity, price) : user.sellStock(stock, quantity, price);
+        if (result.isFilled()) stock.recordTrade(price, quantity);
+        return result;
+    }
+}
+
+// Limit order book for one symbol, matching in price-time priority. Prices are integer ticks (cents).
+// Orders live in parallel primitive arrays indexed by slot and are chained into a FIFO per price
+// level; each side keeps its levels in one sorted array with the best price last, so matching,
+// adding at the top of the book and removing an emptied best level move no more than a few entries.
+// Nothing is allocated per order once the arrays have grown. Not thread-safe: Market serializes
+// access to each book.
+class OrderBook {
+    // Receives every execution; the resting order's price is the trade price
+    interface TradeListener {
+        void onTrade(long buyOrderId, long sellOrderId, int buyOwner, int sellOwner, long priceTicks, int quantity);
+    }
+
+    private final TradeListener listener;
+    private final PriceLadder bids = new PriceLadder(true);
+    private final PriceLadder asks = new PriceLadder(false);
+    private final OrderIndex index = new OrderIndex();
+
+    // Order slots
+    private long[] orderId = new long[1024];
+    private long[] orderPrice = new long[1024];
+    private int[] orderQty = new int[1024];
+    private int[] orderOwner = new int[1024];
+    private boolean[] orderBuy = new boolean[1024];
+    private int[] next = new int[1024];
+    private int[] prev = new int[1024];
+    private int freeSlot = -1;
+    private int usedSlots;
+
+    private long nextOrderId = 1;
+    private long lastTradeTicks;
+    private long tradeCount;
+    private long tradedVolume;
+
+    OrderBook(TradeListener listener) {
+        this.listener = listener;
+    }
+
+    static long toTicks(double price) {
+        return Math.round(price * 100);
+    }
+
+    // Matches a limit order against the other side and rests whatever is left; returns its id
+    long submitLimit(Transaction.Type side, long priceTicks, int quantity, int owner) {
+        return submit(side == Transaction.Type.BUY, priceTicks, quantity, owner, false);
+    }
+
+    // Fills as much as the book allows at any price; the rest is dropped
+    long submitMarket(Transaction.Type side, int quantity, int owner) {
+        boolean buy = side == Transaction.Type.BUY;
+        return submit(buy, buy ? Long.MAX_VALUE : Long.MIN_VALUE, quantity, owner, true);
+    }
+
+    boolean cancel(long id) {
+        int slot = index.remove(id);
+        if (slot < 0) return false;
+        PriceLadder ladder = orderBuy[slot] ? bids : asks;
+        int level = ladder.find(orderPrice[slot]);
+        ladder.quantity[level] -= orderQty[slot];
+        int before = prev[slot];
+        int after = next[slot];
+        if (before < 0) ladder.head[level] = after; else next[before] = after;
+        if (after < 0) ladder.tail[level] = before; else prev[after] = before;
+        if (ladder.head[level] < 0) ladder.removeLevel(level);
+        release(slot);
+        return true;
+    }
+
+    boolean isResting(long id) {
+        return index.get(id) >= 0;
+    }
+
+    // Unfilled quantity of a resting order, or 0 once it is filled or cancelled
+    int remaining(long id) {
+        int slot = index.get(id);
+        return slot < 0 ? 0 : orderQty[slot];
+    }
+
+    long bestBid() {
+        return bids.size == 0 ? 0 : bids.bestPrice();
+    }
+
+    long bestAsk() {
+        return asks.size == 0 ? 0 : asks.bestPrice();
+    }
+
+    // Total resting quantity at a price on one side
+    long depth(Transaction.Type side, long priceTicks) {
+        PriceLadder ladder = side == Transaction.Type.BUY ? bids : asks;
+        int level = ladder.find(priceTicks);
+        return level < 0 ? 0 : ladder.quantity[level];
+    }
+
+    int restingOrders() {
+        return index.size;
+    }
+
+    long lastTradeTicks() {
+        return lastTradeTicks;
+    }
+
+    long tradeCount() {
+        return tradeCount;
+    }
+
+    long tradedVolume() {
+        return tradedVolume;
+    }
+
+    private long submit(boolean buy, long limit, int quantity, int owner, boolean immediateOrCancel) {
+        if (quantity <= 0) throw new IllegalArgumentException("Quantity must be positive");
+        long id = nextOrderId++;
+        PriceLadder other = buy ? asks : bids;
+        while (quantity > 0 && other.size > 0) {
+            int level = other.size - 1;
+            long price = other.bestPrice();
+            if (buy ? price > limit : price < limit) break;
+            int slot = other.head[level];
+            while (quantity > 0 && slot >= 0) {
+                int fill = Math.min(quantity, orderQty[slot]);
+                quantity -= fill;
+                orderQty[slot] -= fill;
+                other.quantity[level] -= fill;
+                lastTradeTicks = price;
+                tradeCount++;
+                tradedVolume += fill;
+                if (buy) listener.onTrade(id, orderId[slot], owner, orderOwner[slot], price, fill);
+                else listener.onTrade(orderId[slot], id, orderOwner[slot], owner, price, fill);
+                if (orderQty[slot] == 0) {
+                    int filled = slot;
+                    slot = next[slot];
+                    index.remove(orderId[filled]);
+                    release(filled);
+                }
+            }
+            if (slot < 0) {
+                other.removeLevel(level);
+            } else {
+                other.head[level] = slot;
+                prev[slot] = -1;
+            }
+        }
+        if (quantity > 0 && !immediateOrCancel) rest(buy, id, limit, quantity, owner);
+        return id;
+    }
+
+    private void rest(boolean buy, long id, long price, int quantity, int owner) {
+        int slot = allocate();
+        orderId[slot] = id;
+        orderPrice[slot] = price;
+        orderQty[slot] = quantity;
+        orderOwner[slot] = owner;
+        orderBuy[slot] = buy;
+        next[slot] = -1;
+        PriceLadder ladder = buy ? bids : asks;
+        int level = ladder.findOrInsert(price);
+        int tail = ladder.tail[level];
+        prev[slot] = tail;
+        if (tail < 0) ladder.head[level] = slot; else next[tail] = slot;
+        ladder.tail[level] = slot;
+        ladder.quantity[level] += quantity;
+        index.put(id, slot);
+    }
+
+    private int allocate() {
+        if (freeSlot >= 0) {
+            int slot = freeSlot;
+            freeSlot = next[slot];
+            return slot;
+        }
+        if (usedSlots == orderId.length) {
+            int n = usedSlots * 2;
+            orderId = Arrays.copyOf(orderId, n);
+            orderPrice = Arrays.copyOf(orderPrice, n);
+            orderQty = Arrays.copyOf(orderQty, n);
+            orderOwner = Arrays.copyOf(orderOwner, n);
+            orderBuy = Arrays.copyOf(orderBuy, n);
+            next = Arrays.copyOf(next, n);
+            prev = Arrays.copyOf(prev, n);
+        }
+        return usedSlots++;
+    }
+
+    private void release(int slot) {
+        next[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    // One side's price levels, sorted so the best price is last. Bids are stored by price and asks
+    // by negated price, so "better" is always "greater key" and both sides share the same code.
+    private static final class PriceLadder {
+        private final boolean bid;
+        long[] keys = new long[64];
+        int[] head = new int[64];
+        int[] tail = new int[64];
+        long[] quantity = new long[64];
+        int size;
+
+        PriceLadder(boolean bid) {
+            this.bid = bid;
+        }
+
+        long bestPrice() {
+            return price(keys[size - 1]);
+        }
+
+        int find(long price) {
+            int pos = Arrays.binarySearch(keys, 0, size, key(price));
+            return pos >= 0 ? pos : -1;
+        }
+
+        int findOrInsert(long price) {
+            long key = key(price);
+            // New orders usually land at or near the top of the book, so scan down from the best level
+            int pos = size;
+            while (pos > 0 && keys[pos - 1] > key) pos--;
+            if (pos > 0 && keys[pos - 1] == key) return pos - 1;
+            if (size == keys.length) {
+                int n = size * 2;
+                keys = Arrays.copyOf(keys, n);
+                head = Arrays.copyOf(head, n);
+                tail = Arrays.copyOf(tail, n);
+                quantity = Arrays.copyOf(quantity, n);
+            }
+            int moved = size - pos;
+            System.arraycopy(keys, pos, keys, pos + 1, moved);
+            System.arraycopy(head, pos, head, pos + 1, moved);
+            System.arraycopy(tail, pos, tail, pos + 1, moved);
+            System.arraycopy(quantity, pos, quantity, pos + 1, moved);
+            keys[pos] = key;
+            head[pos] = -1;
+            tail[pos] = -1;
+            quantity[pos] = 0;
+            size++;
+            return pos;
+        }
+
+        void removeLevel(int pos) {
+            int moved = size - pos - 1;
+            System.arraycopy(keys, pos + 1, keys, pos, moved);
+            System.arraycopy(head, pos + 1, head, pos, moved);
+            System.arraycopy(tail, pos + 1, tail, pos, moved);
+            System.arraycopy(quantity, pos + 1, quantity, pos, moved);
+            size--;
+        }
+
+        private long key(long price) {
+            return bid ? price : -price;
+        }
+
+        private long price(long key) {
+            return bid ? key : -key;
+        }
+    }
+
+    // Order id to slot, open addressing with linear probing and backward-shift deletion
+    private static final class OrderIndex {
+        private long[] ids = new long[2048]; // 0 marks an empty bucket; order ids start at 1
+        private int[] slots = new int[2048];
+        int size;
+
+        int get(long id) {
+            int mask = ids.length - 1;
+            for (int i = hash(id) & mask; ; i = (i + 1) & mask) {
+                if (ids[i] == id) return slots[i];
+                if (ids[i] == 0) return -1;
+            }
+        }
+
+        void put(long id, int slot) {
+            if (size * 2 >= ids.length) grow();
+            int mask = ids.length - 1;
+            int i = hash(id) & mask;
+            while (ids[i] != 0) i = (i + 1) & mask;
+            ids[i] = id;
+            slots[i] = slot;
+            size++;
+        }
+
+        int remove(long id) {
+            int mask = ids.length - 1;
+            int i = hash(id) & mask;
+            while (ids[i] != id) {
+                if (ids[i] == 0) return -1;
+                i = (i + 1) & mask;
+            }
+            int slot = slots[i];
+            size--;
+            // Shift later entries of the probe run back so lookups never stop early at the hole
+            for (int j = (i + 1) & mask; ids[j] != 0; j = (j + 1) & mask) {
+                int home = hash(ids[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    ids[i] = ids[j];
+                    slots[i] = slots[j];
+                    i = j;
+                }
+            }
+            ids[i] = 0;
+            return slot;
+        }
+
+        private void grow() {
+            long[] oldIds = ids;
+            int[] oldSlots = slots;
+            ids = new long[oldIds.length * 2];
+            slots = new int[oldIds.length * 2];
+            size = 0;
+            for (int i = 0; i < oldIds.length; i++) if (oldIds[i] != 0) put(oldIds[i], oldSlots[i]);
+        }
+
+        private static int hash(long id) {
+            long h = id * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
+
+// Interns symbols to dense ids 0, 1, 2, ... Lookups ignore ASCII case and allocate nothing. Interning
+// is serialized; lookups are lock-free, as entries are only ever added (a key is published after its
+// id) or the whole table is replaced.
+class SymbolTable {
+    private static final VarHandle KEYS = MethodHandles.arrayElementVarHandle(String[].class);
+
+    private static final class Table {
+        final String[] keys;
+        final int[] ids;
+
+        Table(int capacity) {
+            keys = new String[capacity];
+            ids = new int[capacity];
+        }
+    }
+
+    private volatile Table table = new Table(64);
+    private volatile int size;
+
+    int size() {
+        return size;
+    }
+
+    // Id of the symbol, or -1 if it was never interned
+    int find(CharSequence symbol) {
+        Table t = table;
+        int mask = t.keys.length - 1;
+        for (int i = hash(symbol) & mask; ; i = (i + 1) & mask) {
+            String key = (String) KEYS.getAcquire(t.keys, i);
+            if (key == null) return -1;
+            if (sameSymbol(key, symbol)) return t.ids[i];
+        }
+    }
+
+    synchronized int intern(String symbol) {
+        int id = find(symbol);
+        if (id >= 0) return id;
+        id = size;
+        Table t = table;
+        if ((id + 1) * 2 > t.keys.length) {
+            Table grown = new Table(t.keys.length * 2);
+            for (int i = 0; i < t.keys.length; i++) if (t.keys[i] != null) insert(grown, t.keys[i], t.ids[i]);
+            table = t = grown;
+        }
+        insert(t, symbol.toUpperCase(Locale.ROOT), id);
+        size = id + 1;
+        return id;
+    }
+
+    private static void insert(Table t, String key, int id) {
+        int mask = t.keys.length - 1;
+        int i = hash(key) & mask;
+        while (t.keys[i] != null) i = (i + 1) & mask;
+        t.ids[i] = id;
+        KEYS.setRelease(t.keys, i, key);
+    }
+
+    private static int hash(CharSequence symbol) {
+        int h = 0;
+        for (int i = 0; i < symbol.length(); i++) h = 31 * h + upper(symbol.charAt(i));
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean sameSymbol(String key, CharSequence symbol) {
+        if (key.length() != symbol.length()) return false;
+        for (int i = 0; i < key.length(); i++) if (key.charAt(i) != upper(symbol.charAt(i))) return false;
+        return true;
+    }
+
+    private static char upper(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - 32) : c;
+    }
+}
+
+// Listed stocks can be read and repriced from any thread. Each symbol is interned to a dense id,
+// and stocks and prices are kept in arrays under that id. Prices sit in fixed-size pages that never
+// move, so listing more stocks cannot lose a concurrent price update.
+class Market {
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    private final SymbolTable symbols = new SymbolTable();
+    private volatile Stock[] stocks = new Stock[16];
+    private volatile AtomicLongArray[] pricePages = { new AtomicLongArray(1 << PAGE_BITS) };
+    // Net shares held across every portfolio bound to this market, by symbol id; portfolios keep it
+    // current as their positions change, so firm-wide exposure never needs a scan of the accounts
+    private volatile AtomicLongArray[] exposurePages = { new AtomicLongArray(1 << PAGE_BITS) };
+    private PriceHistory.Settings historySettings; // null while history is not tracked
+
+    Market() {
+        addStock(new Stock("AAPL", "Apple Inc.", 150.00));
+        addStock(new Stock("GOOGL", "Alphabet Inc.", 2800.00));
+        addStock(new Stock("TSLA", "Tesla Inc.", 700.00));
+        // Add more stocks as needed
+    }
+
+    // Lists a stock, replacing any listed under the same symbol. Positions in the replaced stock move
+    // to the new one and are re-marked at its price.
+    synchronized void addStock(Stock stock) {
+        if (stock.market != null) throw new IllegalArgumentException(stock.symbol + " is already listed");
+        int id = symbols.find(stock.symbol);
+        boolean replacing = id >= 0;
+        if (!replacing) id = symbols.size();
+        Stock[] current = stocks;
+        if (replacing || id == current.length) current = Arrays.copyOf(current, Math.max(current.length, id + 1) * (replacing ? 1 : 2));
+        if ((id >>> PAGE_BITS) == pricePages.length) {
+            AtomicLongArray[] pages = Arrays.copyOf(pricePages, pricePages.length + 1);
+            pages[pages.length - 1] = new AtomicLongArray(1 << PAGE_BITS);
+            AtomicLongArray[] exposure = Arrays.copyOf(exposurePages, exposurePages.length + 1);
+            exposure[exposure.length - 1] = new AtomicLongArray(1 << PAGE_BITS);
+            exposurePages = exposure;
+            pricePages = pages;
+        }
+        setPrice(id, stock.price);
+        stock.id = id;
+        stock.market = this;
+        Stock replaced = replacing ? current[id] : null;
+        if (replaced != null && replaced.history != null) closeHistory(replaced);
+        if (historySettings != null) stock.history = openHistory(stock, historySettings);
+        current[id] = stock;
+        stocks = current;
+        if (!replacing) symbols.intern(stock.symbol);
+        if (replaced != null) replaced.handOver(stock);
+    }
+
+    // Case-insensitive and allocation-free
+    Stock getStock(String symbol) {
+        int id = symbols.find(symbol);
+        return id < 0 ? null : stocks[id];
+    }
+
+    Stock getStock(int id) {
+        return stocks[id];
+    }
+
+    int symbolId(String symbol) {
+        return symbols.find(symbol);
+    }
+
+    int size() {
+        return symbols.size();
+    }
+
+    double price(int id) {
+        return Double.longBitsToDouble(pricePages[id >>> PAGE_BITS].get(id & PAGE_MASK));
+    }
+
+    void setPrice(int id, double price) {
+        pricePages[id >>> PAGE_BITS].set(id & PAGE_MASK, Double.doubleToRawLongBits(price));
+    }
+
+    void addExposure(int id, long shares) {
+        exposurePages[id >>> PAGE_BITS].getAndAdd(id & PAGE_MASK, shares);
+    }
+
+    // Net shares of the symbol held across all accounts
+    long netShares(int id) {
+        return exposurePages[id >>> PAGE_BITS].get(id & PAGE_MASK);
+    }
+
+    long netShares(String symbol) {
+        int id = symbols.find(symbol);
+        return id < 0 ? 0 : netShares(id);
+    }
+
+    // Net shares of the symbol across all accounts valued at its current price
+    double netExposure(String symbol) {
+        int id = symbols.find(symbol);
+        return id < 0 ? 0 : netShares(id) * Portfolio.cents(price(id)) / 100.0;
+    }
+
+    // Firm-wide net exposure over all symbols; O(symbols), independent of the number of accounts
+    double totalNetExposure() {
+        long cents = 0;
+        for (int id = 0, n = size(); id < n; id++) cents += netShares(id) * Portfolio.cents(price(id));
+        return cents / 100.0;
+    }
+
+    // Starts keeping price history for every listed stock and every stock listed from now on
+    synchronized void trackHistory(PriceHistory.Settings settings) {
+        if (historySettings != null) throw new IllegalStateException("Price history is already tracked");
+        historySettings = settings;
+        for (Stock stock : getStocks()) stock.history = openHistory(stock, settings);
+    }
+
+    // The symbol's price history, or null if it is unknown or history is not tracked
+    PriceHistory history(String symbol) {
+        Stock stock = getStock(symbol);
+        return stock == null ? null : stock.history;
+    }
+
+    // Stops keeping price history and releases the spill files
+    synchronized void untrackHistory() {
+        historySettings = null;
+        for (Stock stock : getStocks()) if (stock.history != null) closeHistory(stock);
+    }
+
+    private static PriceHistory openHistory(Stock stock, PriceHistory.Settings settings) {
+        try {
+            return new PriceHistory(stock.symbol, stock.getPrice(), settings);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open price history for " + stock.symbol, e);
+        }
+    }
+
+    // Best effort: a spill file that cannot be closed must not stop a relisting half way
+    private static void closeHistory(Stock stock) {
+        PriceHistory history = stock.history;
+        stock.history = null;
+        try {
+            history.close();
+        } catch (IOException e) {
+            System.err.println("Cannot close price history for " + stock.symbol + ": " + e.getMessage());
+        }
+    }
+
+    // The symbol's limit order book, created on first use; its executions set the stock's price.
+    // Hold the book's monitor while using it directly.
+    OrderBook book(String symbol) {
+        Stock stock = getStock(symbol);
+        if (stock == null) throw new IllegalArgumentException("Unknown symbol: " + symbol);
+        OrderBook book = stock.book;
+        if (book == null) {
+            synchronized (stock) {
+                book = stock.book;
+                if (book == null) {
+                    book = new OrderBook((buyId, sellId, buyOwner, sellOwner, ticks, qty) -> {
+                        stock.updatePrice(ticks / 100.0);
+                        stock.recordTrade(ticks / 100.0, qty);
+                    });
+                    stock.book = book;
+                }
+            }
+        }
+        return book;
+    }
+
+    long submitLimit(String symbol, Transaction.Type side, double price, int quantity, int owner) {
+        OrderBook book = book(symbol);
+        synchronized (book) {
+            return book.submitLimit(side, OrderBook.toTicks(price), quantity, owner);
+        }
+    }
+
+    long submitMarket(String symbol, Transaction.Type side, int quantity, int owner) {
+        OrderBook book = book(symbol);
+        synchronized (book) {
+            return book.submitMarket(side, quantity, owner);
+        }
+    }
+
+    boolean cancel(String symbol, long orderId) {
+        OrderBook book = book(symbol);
+        synchronized (book) {
+            return book.cancel(orderId);
+        }
+    }
+
+    void listStocks() {
+        System.out.println("Market Stocks:");
+        for (Stock s : getStocks()) System.out.println(s);
+    }
+
+    // Listed stocks in listing order
+    List<Stock> getStocks() {
+        int listed = size(); // read before the array, which is always at least this long
+        return Collections.unmodifiableList(Arrays.asList(stocks).subList(0, listed));
+    }
+
+    // Simulate price update (optional)
+    void fluctuatePrices() {
+        fluctuatePrices(null);
+    }
+
+    // Publishes the moves through the feed, whose subscribers apply them, or applies them directly
+    // without one. The feed has a single producer, so call it from one thread at a time.
+    void fluctuatePrices(MarketDataFeed feed) {
+        ThreadLocalRandom rand = ThreadLocalRandom.current();
+        for (Stock s : getStocks()) {
+            double changePercent = (rand.nextDouble() - 0.5) * 0.1; // ±5%
+            double newPrice = Math.round(s.getPrice() * (1 + changePercent) * 100.0) / 100.0;
+            if (feed != null) feed.publish(s, newPrice);
+            else s.updatePrice(newPrice);
+        }
+    }
+}
+
+// Price history for one stock in primitive arrays: the latest ticks in a ring, OHLC bars at each
+// configured interval, and streaming indicators over the ticks (simple and exponential moving
+// average, rolling volatility of log returns) and over recorded trades (VWAP). Every tick and trade
+// updates all of it in O(1). Bars that fall out of a series' ring spill to a memory-mapped file when
+// a spill directory is configured and are dropped otherwise; each history gets files of its own, so
+// a relisted symbol never reuses a file still mapped by the history it replaces. Once closed, a
+// history ignores further ticks and trades. Guarded by its own monitor.
+class PriceHistory implements Closeable {
+    private static final long EPOCH_OFFSET_NANOS = TradeLedger.now() - System.nanoTime();
+    private static final AtomicLong INSTANCES = new AtomicLong();
+
+    static final class Settings {
+        static final Settings DEFAULT = new Settings(1024, 256, new long[] { 1_000_000_000L, 60_000_000_000L }, 20, 20, 100, null);
+
+        final int tickCapacity;         // ticks kept, rounded up to a power of two
+        final int barCapacity;          // bars per interval kept on the heap, rounded up to a power of two
+        final long[] barIntervalsNanos;
+        final int smaWindow;            // ticks
+        final int emaPeriod;            // ticks; smoothing factor 2 / (period + 1)
+        final int volatilityWindow;     // log returns
+        final Path spillDir;            // null drops bars that leave the heap
+
+        Settings(int tickCapacity, int barCapacity, long[] barIntervalsNanos, int smaWindow, int emaPeriod, int volatilityWindow, Path spillDir) {
+            this.tickCapacity = Integer.highestOneBit(Math.max(2, tickCapacity - 1)) << 1;
+            this.barCapacity = Integer.highestOneBit(Math.max(2, barCapacity - 1)) << 1;
+            this.barIntervalsNanos = barIntervalsNanos.clone();
+            this.smaWindow = smaWindow;
+            this.emaPeriod = emaPeriod;
+            this.volatilityWindow = volatilityWindow;
+            this.spillDir = spillDir;
+            if (smaWindow <= 0 || emaPeriod <= 0 || volatilityWindow < 2) throw new IllegalArgumentException("Indicator windows must be positive");
+            if (smaWindow > this.tickCapacity || volatilityWindow >= this.tickCapacity) {
+                throw new IllegalArgumentException("Indicator windows must fit in the tick ring");
+            }
+            for (long interval : barIntervalsNanos) if (interval <= 0) throw new IllegalArgumentException("Bar intervals must be positive");
+        }
+
+        Settings spillTo(Path dir) {
+            return new Settings(tickCapacity, barCapacity, barIntervalsNanos, smaWindow, emaPeriod, volatilityWindow, dir);
+        }
+    }
+
+    // One closed or in-progress bar, materialized for display
+    static final class Bar {
+        final long startNanos;
+        final double open, high, low, close;
+        final long volume;
+        final double vwap; // NaN if nothing traded during the bar
+
+        Bar(long startNanos, double open, double high, double low, double close, long volume, double notional) {
+            this.startNanos = startNanos;
+            this.open = open;
+            this.high = high;
+            this.low = low;
+            this.close = close;
+            this.volume = volume;
+            this.vwap = volume == 0 ? Double.NaN : notional / volume;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s O %.2f H %.2f L %.2f C %.2f V %d", Instant.ofEpochSecond(0, startNanos), open, high, low, close, volume);
+        }
+    }
+
+    private final Settings settings;
+    private final int mask;
+    private final long[] tickNanos;
+    private final double[] tickPrices;
+    private final double[] tickReturns; // log return into each tick
+    private long ticks;
+    private long smaSumCents;
+    private final double emaAlpha;
+    private double ema;
+    private double returnSum, returnSumSq;
+    private long tradedVolume;
+    private double tradedNotional;
+    private final BarSeries[] series;
+    private boolean closed;
+
+    PriceHistory(String symbol, double price, Settings settings) throws IOException {
+        this.settings = settings;
+        this.mask = settings.tickCapacity - 1;
+        this.tickNanos = new long[settings.tickCapacity];
+        this.tickPrices = new double[settings.tickCapacity];
+        this.tickReturns = new double[settings.tickCapacity];
+        this.emaAlpha = 2.0 / (settings.emaPeriod + 1);
+        this.series = new BarSeries[settings.barIntervalsNanos.length];
+        // <symbol>-<interval>-<pid>-<instance>.bars: unique across histories and processes sharing the directory
+        String instance = ProcessHandle.current().pid() + "-" + INSTANCES.incrementAndGet();
+        try {
+            for (int i = 0; i < series.length; i++) {
+                long interval = settings.barIntervalsNanos[i];
+                BarArchive archive = settings.spillDir == null ? null
+                        : new BarArchive(settings.spillDir.resolve(symbol + "-" + unit(interval) + "-" + instance + ".bars"));
+                series[i] = new BarSeries(interval, settings.barCapacity, archive);
+            }
+        } catch (IOException e) {
+            try {
+                close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+        tick(now(), price);
+    }
+
+    private static String unit(long nanos) {
+        return nanos % 1_000_000 == 0 ? nanos / 1_000_000 + "ms" : nanos + "ns";
+    }
+
+    // Wall-clock time in epoch nanoseconds from the monotonic clock, without allocating
+    static long now() {
+        return EPOCH_OFFSET_NANOS + System.nanoTime();
+    }
+
+    synchronized void tick(long nanos, double price) {
+        if (closed) return; // a tick racing with untrackHistory or a relisting
+        long t = ticks;
+        int slot = (int) (t & mask);
+        if (t >= settings.smaWindow) smaSumCents -= Portfolio.cents(tickPrices[(int) ((t - settings.smaWindow) & mask)]);
+        smaSumCents += Portfolio.cents(price);
+
+        // Returns start with the second tick; the window holds the latest volatilityWindow of them
+        double r = 0;
+        if (t > 0) {
+            double previous = tickPrices[(int) ((t - 1) & mask)];
+            r = previous > 0 && price > 0 ? Math.log(price / previous) : 0;
+            returnSum += r;
+            returnSumSq += r * r;
+            if (t > settings.volatilityWindow) {
+                double evicted = tickReturns[(int) ((t - settings.volatilityWindow) & mask)];
+                returnSum -= evicted;
+                returnSumSq -= evicted * evicted;
+            }
+        }
+        tickNanos[slot] = nanos;
+        tickPrices[slot] = price;
+        tickReturns[slot] = r;
+        ema = t == 0 ? price : ema + emaAlpha * (price - ema);
+        ticks = t + 1;
+        for (BarSeries bars : series) bars.tick(nanos, price);
+    }
+
+    synchronized void trade(long nanos, double price, int quantity) {
+        if (closed) return;
+        tradedVolume += quantity;
+        tradedNotional += price * quantity;
+        for (BarSeries bars : series) bars.trade(nanos, price, quantity);
+    }
+
+    synchronized long ticks() {
+        return ticks;
+    }
+
+    // Ticks still held, newest last
+    synchronized int retainedTicks() {
+        return (int) Math.min(ticks, tickPrices.length);
+    }
+
+    // back = 0 is the latest tick
+    synchronized double price(int back) {
+        return tickPrices[tickSlot(back)];
+    }
+
+    synchronized long nanos(int back) {
+        return tickNanos[tickSlot(back)];
+    }
+
+    // Mean of the latest smaWindow ticks, or of all ticks while there are fewer
+    synchronized double sma() {
+        return smaSumCents / 100.0 / Math.min(ticks, settings.smaWindow);
+    }
+
+    synchronized double ema() {
+        return ema;
+    }
+
+    // Volume-weighted average price of every recorded trade; NaN before the first
+    synchronized double vwap() {
+        return tradedVolume == 0 ? Double.NaN : tradedNotional / tradedVolume;
+    }
+
+    // Sample standard deviation of the latest volatilityWindow log returns (per tick, not annualized)
+    synchronized double volatility() {
+        long n = Math.min(ticks - 1, settings.volatilityWindow);
+        if (n < 2) return Double.NaN;
+        double variance = (returnSumSq - returnSum * returnSum / n) / (n - 1);
+        return Math.sqrt(Math.max(0, variance));
+    }
+
+    int barIntervals() {
+        return series.length;
+    }
+
+    // Bars of the index-th configured interval
+    BarSeries bars(int index) {
+        return series[index];
+    }
+
+    // Bars already spilled stay readable; the files themselves are deleted
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        IOException failure = null;
+        for (BarSeries bars : series) {
+            if (bars == null || bars.archive == null) continue;
+            try {
+                bars.archive.close();
+            } catch (IOException e) {
+                if (failure == null) failure = e;
+                else failure.addSuppressed(e);
+            }
+        }
+        if (failure != null) throw failure;
+    }
+
+    private int tickSlot(int back) {
+        if (back < 0 || back >= Math.min(ticks, tickPrices.length)) throw new IndexOutOfBoundsException("No tick " + back + " back");
+        return (int) ((ticks - 1 - back) & mask);
+    }
+
+    // OHLC bars of one interval: closed bars in a ring of primitive columns, the oldest spilling to
+    // an archive, plus the bar in progress. Bars are aligned to multiples of the interval since the
+    // epoch; intervals without a tick or trade produce no bar. Guarded by the owning history.
+    final class BarSeries {
+        final long intervalNanos;
+        private final int barMask;
+        private final long[] start, volume;
+        private final double[] open, high, low, close, notional;
+        private BarArchive archive; // null when not spilling, or after a spill failed
+        private long closed;       // bars closed so far
+        private long dropped;      // closed bars gone without an archive
+        private long currentStart = Long.MIN_VALUE;
+        private double curOpen, curHigh, curLow, curClose, curNotional;
+        private long curVolume;
+
+        private BarSeries(long intervalNanos, int capacity, BarArchive archive) {
+            this.intervalNanos = intervalNanos;
+            this.barMask = capacity - 1;
+            this.archive = archive;
+            start = new long[capacity];
+            volume = new long[capacity];
+            open = new double[capacity];
+            high = new double[capacity];
+            low = new double[capacity];
+            close = new double[capacity];
+            notional = new double[capacity];
+        }
+
+        private void tick(long nanos, double price) {
+            if (roll(nanos, price)) return;
+            if (price > curHigh) curHigh = price;
+            if (price < curLow) curLow = price;
+            curClose = price;
+        }
+
+        private void trade(long nanos, double price, int quantity) {
+            roll(nanos, price);
+            curVolume += quantity;
+            curNotional += price * quantity;
+        }
 
-    Stock(String symbol, String name, double price) {
-        this.symbol = symbol;
-        this.name = name;
-        this.price = price;
-    }
+        // Closes the current bar if nanos is past it; returns whether a new bar was opened at price
+        private boolean roll(long nanos, double price) {
+            long barStart = Math.floorDiv(nanos, intervalNanos) * intervalNanos;
+            if (barStart <= currentStart) return false; // same bar, or a late tick folded into it
+            if (currentStart != Long.MIN_VALUE) closeBar();
+            currentStart = barStart;
+            curOpen = curHigh = curLow = curClose = price;
+            curVolume = 0;
+            curNotional = 0;
+            return true;
+        }
+
+        private void closeBar() {
+            int slot = (int) (closed & barMask);
+            if (closed > barMask) {
+                // The slot holds the oldest bar on the heap
+                if (archive != null) spill(slot);
+                else dropped++;
+            }
+            start[slot] = currentStart;
+            open[slot] = curOpen;
+            high[slot] = curHigh;
+            low[slot] = curLow;
+            close[slot] = curClose;
+            volume[slot] = curVolume;
+            notional[slot] = curNotional;
+            closed++;
+        }
 
-    void updatePrice(double newPrice) { this.price = newPrice; }
+        // A failed spill (e.g. a full disk) must not fail the price update that closed the bar: the
+        // series stops spilling and everything that has left the heap counts as dropped
+        private void spill(int slot) {
+            try {
+                archive.append(start[slot], open[slot], high[slot], low[slot], close[slot], volume[slot], notional[slot]);
+            } catch (UncheckedIOException e) {
+                System.err.println("Spilling " + intervalNanos + "ns bars failed, older bars are dropped: " + e.getMessage());
+                try {
+                    archive.close();
+                } catch (IOException ignored) {
+                    // already failing
+                }
+                archive = null;
+                dropped = closed - start.length + 1;
+            }
+        }
 
-    double getPrice() { return price; }
+        // Closed bars ever produced; those before first() are no longer available
+        long count() {
+            synchronized (PriceHistory.this) {
+                return closed;
+            }
+        }
 
-    @Override
-    public String toString() {
-        return symbol + " (" + name + ") - $" + String.format("%.2f", price);
+        long first() {
+            synchronized (PriceHistory.this) {
+                return dropped;
+            }
+        }
+
+        // The index-th closed bar, oldest first; read from the spill file once it has left the heap
+        Bar bar(long index) {
+            synchronized (PriceHistory.this) {
+                if (index < dropped || index >= closed) throw new IndexOutOfBoundsException("No bar " + index + " of " + closed);
+                if (index < closed - start.length) return archive.read(index);
+                int slot = (int) (index & barMask);
+                return new Bar(start[slot], open[slot], high[slot], low[slot], close[slot], volume[slot], notional[slot]);
+            }
+        }
+
+        Bar current() {
+            synchronized (PriceHistory.this) {
+                return new Bar(currentStart, curOpen, curHigh, curLow, curClose, curVolume, curNotional);
+            }
+        }
     }
 }
 
-class Transaction implements Serializable {
-    enum Type { BUY, SELL }
+// Append-only file of fixed-size bar records, written and read through memory-mapped segments so
+// long histories stay off the heap. A scratch file: created empty, and deleted again on close.
+class BarArchive implements Closeable {
+    private static final int MAGIC = 0x42415253; // "BARS"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;   // magic, version, bar count
+    private static final int BAR_BYTES = 56;
+    private static final int SEGMENT_BARS = 1 << 16;
+    private static final long SEGMENT_BYTES = (long) SEGMENT_BARS * BAR_BYTES;
 
-    Stock stock;
-    int quantity;
-    double price;
-    Type type;
-    LocalDateTime timestamp;
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    private long count;
 
-    Transaction(Stock stock, int qty, double price, Type type) {
-        this.stock = stock;
-        this.quantity = qty;
-        this.price = price;
-        this.type = type;
-        this.timestamp = LocalDateTime.now();
+    BarArchive(Path file) throws IOException {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        this.file = file;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+        header.putInt(0, MAGIC).putInt(4, VERSION).putLong(8, 0);
+    }
+
+    long size() {
+        return count;
+    }
+
+    void append(long startNanos, double open, double high, double low, double close, long volume, double notional) {
+        int segment = (int) (count / SEGMENT_BARS);
+        if (segment == segments.length) {
+            try {
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_BYTES + segment * SEGMENT_BYTES, SEGMENT_BYTES);
+                segments = Arrays.copyOf(segments, segment + 1);
+                segments[segment] = mapped;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot grow bar archive", e);
+            }
+        }
+        MappedByteBuffer buf = segments[segment];
+        int at = (int) (count % SEGMENT_BARS) * BAR_BYTES;
+        buf.putLong(at, startNanos).putDouble(at + 8, open).putDouble(at + 16, high).putDouble(at + 24, low)
+           .putDouble(at + 32, close).putLong(at + 40, volume).putDouble(at + 48, notional);
+        header.putLong(8, ++count);
+    }
+
+    PriceHistory.Bar read(long index) {
+        MappedByteBuffer buf = segments[(int) (index / SEGMENT_BARS)];
+        int at = (int) (index % SEGMENT_BARS) * BAR_BYTES;
+        return new PriceHistory.Bar(buf.getLong(at), buf.getDouble(at + 8), buf.getDouble(at + 16), buf.getDouble(at + 24),
+                buf.getDouble(at + 32), buf.getLong(at + 40), buf.getDouble(at + 48));
     }
 
+    // Written bars stay readable through the mappings, which are released once garbage collected;
+    // deleting the file never truncates what they map
     @Override
-    public String toString() {
-        return String.format("%s %d shares of %s at $%.2f on %s",
-                             type, quantity, stock.symbol, price, timestamp);
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            Files.deleteIfExists(file);
+        }
     }
 }
 
-class Portfolio implements Serializable {
-    private Map<String, Integer> holdings = new HashMap<>();
+// Receives ticks from a MarketDataFeed on the feed's consumer thread
+interface TickHandler {
+    void onTick(Stock stock, double price, long publishNanos);
+}
 
-    void addStock(Stock stock, int quantity) {
-        holdings.put(stock.symbol, holdings.getOrDefault(stock.symbol, 0) + quantity);
+// Market data fan-out through a preallocated ring buffer, Disruptor style: one producer claims slots
+// in sequence and publishes by advancing a cursor, and each consumer follows on its own thread with
+// its own sequence, handling everything up to the cursor in one batch. No locks or allocation per
+// tick; the producer only waits when the slowest consumer is a full ring behind.
+class MarketDataFeed implements Closeable {
+    // Sequence counter padded onto its own cache line so producer and consumers don't false-share
+    static final class Sequence extends AtomicLong {
+        private static final long serialVersionUID = 1L; // AtomicLong is Serializable; sequences never are
+
+        long p1, p2, p3, p4, p5, p6, p7;
+
+        Sequence(long initial) {
+            super(initial);
+        }
     }
 
-    boolean removeStock(Stock stock, int quantity) {
-        int owned = holdings.getOrDefault(stock.symbol, 0);
-        if (quantity > owned) return false;
-        if (quantity == owned) holdings.remove(stock.symbol);
-        else holdings.put(stock.symbol, owned - quantity);
-        return true;
+    private final int mask;
+    private final Stock[] stocks;
+    private final double[] prices;
+    private final long[] publishNanos;
+    private final Sequence cursor = new Sequence(-1);
+    private volatile Sequence[] gating = new Sequence[0];
+    private final List<Thread> consumers = new ArrayList<>();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private volatile Throwable failure; // first exception that stopped a consumer
+    private long claimed = -1;
+    private long cachedGate = -1;
+
+    MarketDataFeed(int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two");
+        mask = capacity - 1;
+        stocks = new Stock[capacity];
+        prices = new double[capacity];
+        publishNanos = new long[capacity];
     }
 
-    int getQuantity(String symbol) {
-        return holdings.getOrDefault(symbol, 0);
+    // Applies each tick to its stock, which re-marks every portfolio holding it
+    static TickHandler priceUpdater() {
+        return (stock, price, nanos) -> stock.updatePrice(price);
     }
 
-    Set<String> getSymbols() {
-        return holdings.keySet();
+    // Starts a consumer thread that sees every tick published from now on. Add consumers before publishing.
+    synchronized void subscribe(String name, TickHandler handler) {
+        Sequence sequence = new Sequence(cursor.get());
+        Sequence[] grown = Arrays.copyOf(gating, gating.length + 1);
+        grown[gating.length] = sequence;
+        gating = grown;
+        Thread thread = new Thread(() -> consume(sequence, handler), name);
+        thread.setDaemon(true);
+        consumers.add(thread);
+        thread.start();
     }
 
-    double getValue(Market market) {
-        double total = 0.0;
-        for (String symbol : holdings.keySet()) {
-            Stock stock = market.getStock(symbol);
-            if (stock != null) {
-                total += stock.getPrice() * holdings.get(symbol);
+    // Single producer: call from one thread at a time
+    void publish(Stock stock, double price) {
+        long next = claimed + 1;
+        long wrapPoint = next - stocks.length;
+        if (wrapPoint > cachedGate) {
+            long gate;
+            for (int idle = 0; wrapPoint > (gate = slowest(next - 1)); idle++) {
+                checkConsumers();
+                idle(idle);
             }
+            cachedGate = gate;
         }
-        return total;
+        int slot = (int) next & mask;
+        stocks[slot] = stock;
+        prices[slot] = price;
+        publishNanos[slot] = System.nanoTime();
+        claimed = next;
+        cursor.lazySet(next); // release: the slot's writes become visible before the cursor moves
     }
 
-    void printPortfolio(Market market) {
-        if (holdings.isEmpty()) {
-            System.out.println("Portfolio is empty.");
-            return;
+    // Publishes ticks random-walking every listed stock by up to +-maxMove (fractional) per tick
+    void simulate(Market market, long ticks, double maxMove, long seed) {
+        Stock[] listed = market.getStocks().toArray(new Stock[0]);
+        double[] price = new double[listed.length];
+        for (int i = 0; i < listed.length; i++) price[i] = listed[i].getPrice();
+        SplittableRandom rand = new SplittableRandom(seed);
+        for (long t = 0; t < ticks; t++) {
+            int i = rand.nextInt(listed.length);
+            double moved = price[i] * (1 + (rand.nextDouble() - 0.5) * 2 * maxMove);
+            price[i] = Math.max(0.01, Math.round(moved * 100.0) / 100.0);
+            publish(listed[i], price[i]);
         }
-        System.out.println("Portfolio holdings:");
-        for (Map.Entry<String, Integer> entry : holdings.entrySet()) {
-            Stock stock = market.getStock(entry.getKey());
-            if (stock != null) {
-                System.out.printf("%s: %d shares @ $%.2f each (Total: $%.2f)%n",
-                        stock.symbol, entry.getValue(), stock.getPrice(),
-                        stock.getPrice() * entry.getValue());
+    }
+
+    // Replays "SYMBOL,price" lines; unknown symbols and malformed lines are skipped. Returns ticks published.
+    long replay(Market market, Path file) throws IOException {
+        long published = 0;
+        try (BufferedReader in = Files.newBufferedReader(file)) {
+            for (String line; (line = in.readLine()) != null; ) {
+                int comma = line.indexOf(',');
+                if (comma < 0) continue;
+                Stock stock = market.getStock(line.substring(0, comma).trim());
+                if (stock == null) continue;
+                try {
+                    publish(stock, Double.parseDouble(line.substring(comma + 1).trim()));
+                    published++;
+                } catch (NumberFormatException e) {
+                    // skip the line
+                }
+            }
+        }
+        return published;
+    }
+
+    // Sequence of the last published tick
+    long published() {
+        return cursor.get();
+    }
+
+    // Waits for every consumer to handle everything published so far. Throws IllegalStateException
+    // if a consumer died instead.
+    void drain() {
+        long last = cursor.get();
+        for (int idle = 0; slowest(last) < last; idle++) {
+            checkConsumers();
+            idle(idle);
+        }
+    }
+
+    // Waits for every consumer to handle everything published, then stops them. Throws
+    // IllegalStateException, once the others are stopped, if a consumer died instead.
+    @Override
+    public void close() {
+        IllegalStateException died = null;
+        try {
+            drain();
+        } catch (IllegalStateException e) {
+            died = e;
+        }
+        running.set(false);
+        for (Thread t : consumers) {
+            try {
+                t.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (died != null) throw died;
+    }
+
+    // A dead consumer never advances its sequence, so waiting on it would spin forever
+    private synchronized void checkConsumers() {
+        for (Thread t : consumers) {
+            if (!t.isAlive()) throw new IllegalStateException("Consumer " + t.getName() + " stopped", failure);
+        }
+    }
+
+    private void consume(Sequence sequence, TickHandler handler) {
+        try {
+            follow(sequence, handler);
+        } catch (RuntimeException | Error e) {
+            if (failure == null) failure = e;
+            throw e;
+        }
+    }
+
+    private void follow(Sequence sequence, TickHandler handler) {
+        long next = sequence.get() + 1;
+        int idle = 0;
+        while (running.get()) {
+            long available = cursor.get();
+            if (available < next) {
+                idle(idle++);
+                continue;
+            }
+            idle = 0;
+            for (; next <= available; next++) {
+                int slot = (int) next & mask;
+                handler.onTick(stocks[slot], prices[slot], publishNanos[slot]);
             }
+            sequence.lazySet(available);
         }
-        System.out.printf("Total portfolio value: $%.2f%n", getValue(market));
+    }
+
+    private long slowest(long upTo) {
+        long min = upTo;
+        for (Sequence s : gating) min = Math.min(min, s.get());
+        return min;
+    }
+
+    // Spin briefly, then yield, then park: keeps latency low when busy without burning an idle core
+    private static void idle(int count) {
+        if (count < 100) Thread.onSpinWait();
+        else if (count < 200) Thread.yield();
+        else LockSupport.parkNanos(50_000);
     }
 }
 
-class User implements Serializable {
-    String username;
-    double balance;
-    Portfolio portfolio = new Portfolio();
-    List<Transaction> transactions = new ArrayList<>();
+// Per-user account persistence without Java serialization. Every fill is appended to <user>.trades
+// through a FileChannel as it happens, as a length- and CRC-framed record; save() forces the log to
+// disk, so saving costs only the trades since the last save. Every SNAPSHOT_TRADES fills, and on
+// close, a compact snapshot of balance, P&L and positions is written to <user>.account (via a
+// temporary file and an atomic rename) together with the log offset it covers. Loading reads the
+// snapshot and replays only the log after it; the full history is read from the log only when
+// someone asks for it. A torn record at the end of the log is dropped on load. An account still in
+// the serialized <user>.dat of earlier versions is imported on its first load (see LegacyAccount).
+class AccountStore implements Closeable {
+    private static final int LOG_MAGIC = 0x41545244;      // "ATRD"
+    private static final int SNAPSHOT_MAGIC = 0x41534E50; // "ASNP"
+    private static final int FORMAT_VERSION = 1;
+    private static final int LOG_HEADER_BYTES = 8;
+    private static final int MAX_RECORD_BYTES = 1 << 10;
+    static final int SNAPSHOT_TRADES = 10_000;
 
-    User(String username, double initialBalance) {
-        this.username = username;
-        this.balance = initialBalance;
+    private final Path logFile;
+    private final Path snapshotFile;
+    private final Path legacyFile;
+    private final FileChannel log;
+    private final ByteBuffer record = ByteBuffer.allocate(MAX_RECORD_BYTES);
+    private final CRC32 crc = new CRC32();
+    private long logEnd;
+    private long trades;          // fills in the log
+    private long snapshotTrades;  // fills covered by the snapshot
+
+    private AccountStore(Path dir, String username) throws IOException {
+        logFile = dir.resolve(username + ".trades");
+        snapshotFile = dir.resolve(username + ".account");
+        legacyFile = dir.resolve(username + ".dat");
+        log = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    static AccountStore open(String username) throws IOException {
+        return open(Paths.get("").toAbsolutePath(), username);
     }
 
-    boolean buyStock(Stock stock, int quantity) {
-        double cost = stock.getPrice() * quantity;
-        if (cost > balance) {
-            System.out.println("Insufficient balance to buy.");
-            return false;
+    static AccountStore open(Path dir, String username) throws IOException {
+        Files.createDirectories(dir);
+        return new AccountStore(dir, username);
+    }
+
+    // Loads the account as of its last fill, or returns null if it has never been saved. Without a
+    // snapshot, a <user>.dat is imported, or else a log with fills is replayed from its start.
+    User load(String username, Market market) throws IOException {
+        if (!Files.exists(snapshotFile)) {
+            // The .dat is renamed only once its import is snapshotted, so a log next to it is a partial import
+            if (Files.exists(legacyFile)) return importLegacy(username, market);
+            if (log.size() > LOG_HEADER_BYTES) return rebuild(username, market);
+            return null;
         }
-        balance -= cost;
-        portfolio.addStock(stock, quantity);
-        transactions.add(new Transaction(stock, quantity, stock.getPrice(), Transaction.Type.BUY));
-        System.out.println("Bought " + quantity + " shares of " + stock.symbol);
-        return true;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(snapshotFile));
+        if (in.remaining() < 16 || in.getInt() != SNAPSHOT_MAGIC || in.getInt() != FORMAT_VERSION) {
+            throw new IOException(snapshotFile + " is not an account snapshot");
+        }
+        int length = in.getInt();
+        int expected = in.getInt();
+        if (length != in.remaining()) throw new IOException(snapshotFile + " is truncated");
+        crc.reset();
+        crc.update(in.array(), in.position(), length);
+        if ((int) crc.getValue() != expected) throw new IOException(snapshotFile + " is corrupt");
+
+        snapshotTrades = in.getLong();
+        long offset = in.getLong();
+        User user = new User(username, in.getDouble());
+        long realized = in.getLong();
+        List<Portfolio.Position> positions = new ArrayList<>();
+        for (int n = in.getInt(); n > 0; n--) {
+            String symbol = getString(in);
+            int quantity = in.getInt();
+            positions.add(Portfolio.restoredPosition(symbol, quantity, in.getLong()));
+        }
+        user.portfolio.restore(realized, positions);
+        user.portfolio.attach(market);
+
+        trades = snapshotTrades;
+        replay(user, market, offset);
+        user.store = this;
+        return user;
+    }
+
+    // The snapshot was lost, but the log holds every fill since the account was created
+    private User rebuild(String username, Market market) throws IOException {
+        User user = new User(username, 0);
+        user.portfolio.attach(market);
+        snapshotTrades = 0;
+        trades = 0;
+        replay(user, market, LOG_HEADER_BYTES);
+        if (trades == 0) throw new IOException(snapshotFile + " is missing and " + logFile + " holds no intact fills");
+        user.store = this;
+        snapshot(user);
+        return user;
+    }
+
+    private void replay(User user, Market market, long offset) throws IOException {
+        logEnd = scan(offset, (symbol, side, qty, price, nanos, balanceAfter) -> {
+            user.replayFill(market.getStock(symbol), side, qty, price, balanceAfter);
+            trades++;
+        });
+        log.truncate(logEnd);
+        user.transactions = null; // history() reads it from the log when needed
     }
 
-    boolean sellStock(Stock stock, int quantity) {
-        if (!portfolio.removeStock(stock, quantity)) {
-            System.out.println("Not enough shares to sell.");
-            return false;
+    // Writes the old account's fills to a fresh log, checks they add up to its saved holdings and
+    // snapshots it; only then is <user>.dat renamed to <user>.dat.imported
+    private User importLegacy(String username, Market market) throws IOException {
+        LegacyAccount old = LegacyAccount.read(legacyFile);
+        int n = old.symbols.length;
+        // Each fill's balance after it, working back from the saved balance
+        double[] balanceAfter = new double[n];
+        double balance = old.balance;
+        for (int i = n - 1; i >= 0; i--) {
+            balanceAfter[i] = balance;
+            double value = old.prices[i] * old.quantities[i];
+            balance += old.sides[i] == Transaction.Type.BUY ? value : -value;
         }
-        double revenue = stock.getPrice() * quantity;
-        balance += revenue;
-        transactions.add(new Transaction(stock, quantity, stock.getPrice(), Transaction.Type.SELL));
-        System.out.println("Sold " + quantity + " shares of " + stock.symbol);
-        return true;
+        User user = new User(username, balance);
+        user.portfolio.attach(market);
+        for (int i = 0; i < n; i++) {
+            user.replayFill(market.getStock(old.symbols[i]), old.sides[i], old.quantities[i], old.prices[i], balanceAfter[i]);
+        }
+        user.balance = old.balance;
+        for (Map.Entry<String, Integer> holding : old.holdings.entrySet()) {
+            Stock stock = market.getStock(holding.getKey());
+            if (stock != null && user.portfolio.getQuantity(stock) != holding.getValue()) {
+                throw new IOException(legacyFile + ": the fills do not add up to the saved " + holding.getKey() + " holding");
+            }
+        }
+        for (Portfolio.Position position : user.portfolio.getPositions()) {
+            if (!old.holdings.containsKey(position.symbol)) {
+                throw new IOException(legacyFile + ": the fills leave " + position.symbol + " shares that were not saved");
+            }
+        }
+
+        log.truncate(0);
+        writeHeader();
+        trades = 0;
+        for (int i = 0; i < n; i++) {
+            append(old.symbols[i], old.sides[i], old.quantities[i], old.prices[i], old.epochNanos[i], balanceAfter[i]);
+        }
+        user.transactions = null;
+        user.store = this;
+        snapshot(user);
+        Files.move(legacyFile, legacyFile.resolveSibling(legacyFile.getFileName() + ".imported"), StandardCopyOption.REPLACE_EXISTING);
+        return user;
     }
 
-    void printTransactions() {
-        if (transactions.isEmpty()) System.out.println("No transactions yet.");
-        else {
-            System.out.println("Transaction History:");
-            for (Transaction t : transactions) System.out.println(t);
+    // Starts persisting a new account; refuses to start over a log that already holds fills
+    void create(User user) throws IOException {
+        if (log.size() > LOG_HEADER_BYTES) throw new IOException(logFile + " already holds fills; load the account instead");
+        log.truncate(0);
+        writeHeader();
+        trades = 0;
+        user.store = this;
+        snapshot(user);
+    }
+
+    private void writeHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES).putInt(LOG_MAGIC).putInt(FORMAT_VERSION).flip();
+        while (header.hasRemaining()) log.write(header, header.position());
+        logEnd = LOG_HEADER_BYTES;
+    }
+
+    // Called under the user's monitor for every fill, before it is applied
+    void tradeExecuted(String symbol, Transaction.Type side, int quantity, double price, long nanos, double balanceAfter) {
+        try {
+            append(symbol, side, quantity, price, nanos, balanceAfter);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Account log write failed", e);
         }
     }
 
-    void printPortfolio(Market market) {
-        portfolio.printPortfolio(market);
-        System.out.printf("Available balance: $%.2f%n", balance);
+    // Called under the user's monitor once a logged fill is applied. A failed snapshot is retried at
+    // the next fill; the log still has everything.
+    void fillApplied(User user) {
+        if (trades - snapshotTrades < SNAPSHOT_TRADES) return;
+        try {
+            snapshot(user);
+        } catch (IOException e) {
+            System.err.println("Snapshot of " + user.username + " failed: " + e.getMessage());
+        }
+    }
+
+    // A failed write leaves logEnd where it was, so the next record overwrites any torn bytes
+    private void append(String symbol, Transaction.Type side, int quantity, double price, long nanos, double balanceAfter) throws IOException {
+        record.clear();
+        record.position(8);
+        record.put((byte) (side == Transaction.Type.BUY ? 0 : 1)).putInt(quantity).putDouble(price)
+              .putLong(nanos).putDouble(balanceAfter);
+        putString(record, symbol);
+        int length = record.position() - 8;
+        crc.reset();
+        crc.update(record.array(), 8, length);
+        record.putInt(0, length).putInt(4, (int) crc.getValue()).flip();
+        long end = logEnd;
+        while (record.hasRemaining()) end += log.write(record, end);
+        logEnd = end;
+        trades++;
+    }
+
+    // Makes every fill so far durable
+    void save() throws IOException {
+        log.force(false);
+    }
+
+    // Writes a compact snapshot of the account; later loads start from it. Call under the user's monitor.
+    void snapshot(User user) throws IOException {
+        log.force(false); // the snapshot must never cover fills that could still be lost
+        List<Portfolio.Position> positions = user.portfolio.getPositions();
+        ByteBuffer out = ByteBuffer.allocate(64 + positions.size() * 64);
+        out.putInt(SNAPSHOT_MAGIC).putInt(FORMAT_VERSION).putInt(0).putInt(0);
+        out.putLong(trades).putLong(logEnd).putDouble(user.balance).putLong(user.portfolio.getRealizedCents());
+        out.putInt(positions.size());
+        for (Portfolio.Position p : positions) {
+            if (out.remaining() < 64 + p.symbol.length() * 3) out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+            putString(out, p.symbol);
+            out.putInt(p.getQuantity()).putLong(p.getCostCents());
+        }
+        int length = out.position() - 16;
+        crc.reset();
+        crc.update(out.array(), 16, length);
+        out.putInt(8, length).putInt(12, (int) crc.getValue()).flip();
+        Path tmp = snapshotFile.resolveSibling(snapshotFile.getFileName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (out.hasRemaining()) ch.write(out);
+            ch.force(true);
+        }
+        Files.move(tmp, snapshotFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        snapshotTrades = trades;
+    }
+
+    // Reads every fill in the log into a ledger
+    TradeLedger readHistory() {
+        TradeLedger ledger = new TradeLedger();
+        try {
+            scan(LOG_HEADER_BYTES, (symbol, side, qty, price, nanos, balanceAfter) ->
+                    ledger.append(symbol, side, qty, Portfolio.cents(price), nanos));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Reading trade history failed", e);
+        }
+        return ledger;
+    }
+
+    long trades() {
+        return trades;
+    }
+
+    // Fills in the log that the snapshot does not cover
+    long tail() {
+        return trades - snapshotTrades;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.force(false);
+        log.close();
+    }
+
+    interface FillVisitor {
+        void fill(String symbol, Transaction.Type side, int quantity, double price, long nanos, double balanceAfter);
+    }
+
+    // Visits intact records from offset up to the first torn or corrupt one and returns where that is
+    private long scan(long offset, FillVisitor visitor) throws IOException {
+        long size = log.size();
+        if (size < LOG_HEADER_BYTES) throw new IOException(logFile + " is missing its header");
+        ByteBuffer header = ByteBuffer.allocate(LOG_HEADER_BYTES);
+        while (header.hasRemaining() && log.read(header, header.position()) > 0) { }
+        if (header.flip().getInt() != LOG_MAGIC || header.getInt() != FORMAT_VERSION) throw new IOException(logFile + " is not a trade log");
+
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(1 << 20, Math.max(MAX_RECORD_BYTES, size - offset)));
+        long bufStart = offset; // file offset of buf[0]
+        buf.limit(0);
+        CRC32 check = new CRC32();
+        while (true) {
+            if (buf.remaining() < 8 || buf.remaining() < 8 + buf.getInt(buf.position())) {
+                // Refill: keep the partial record and read more after it
+                bufStart += buf.position();
+                buf.compact();
+                int read = 0;
+                while (buf.hasRemaining() && (read = log.read(buf, bufStart + buf.position())) > 0) { }
+                buf.flip();
+                if (buf.remaining() < 8) return bufStart + buf.position();
+            }
+            int length = buf.getInt(buf.position());
+            if (length <= 0 || length > MAX_RECORD_BYTES - 8 || buf.remaining() < 8 + length) return bufStart + buf.position();
+            int expected = buf.getInt(buf.position() + 4);
+            check.reset();
+            check.update(buf.array(), buf.position() + 8, length);
+            if ((int) check.getValue() != expected) return bufStart + buf.position();
+            buf.position(buf.position() + 8);
+            Transaction.Type side = buf.get() == 0 ? Transaction.Type.BUY : Transaction.Type.SELL;
+            int quantity = buf.getInt();
+            double price = buf.getDouble();
+            long nanos = buf.getLong();
+            double balanceAfter = buf.getDouble();
+            visitor.fill(getString(buf), side, quantity, price, nanos, balanceAfter);
+        }
+    }
+
+    private static void putString(ByteBuffer out, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.putShort((short) bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer in) {
+        int length = in.getShort() & 0xFFFF;
+        String value = new String(in.array(), in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
     }
 }
 
-class Market {
-    private Map<String, Stock> stocks = new HashMap<>();
+// Reads <user>.dat, the serialized User that earlier versions saved. Those classes have since
+// changed shape, so the stream's User, Portfolio, Transaction and Stock are read into private
+// copies of their old fields and handed to AccountStore as columns.
+final class LegacyAccount {
+    private static final class OldStock implements Serializable {
+        private static final long serialVersionUID = 2596423738344695110L;
+        String symbol;
+        String name;
+        double price;
+    }
 
-    Market() {
-        stocks.put("AAPL", new Stock("AAPL", "Apple Inc.", 150.00));
-        stocks.put("GOOGL", new Stock("GOOGL", "Alphabet Inc.", 2800.00));
-        stocks.put("TSLA", new Stock("TSLA", "Tesla Inc.", 700.00));
-        // Add more stocks as needed
+    private static final class OldTransaction implements Serializable {
+        private static final long serialVersionUID = 9123534393035755760L;
+        OldStock stock;
+        int quantity;
+        double price;
+        Transaction.Type type;
+        LocalDateTime timestamp;
     }
 
-    Stock getStock(String symbol) {
-        return stocks.get(symbol.toUpperCase());
+    private static final class OldPortfolio implements Serializable {
+        private static final long serialVersionUID = 8894900827845975794L;
+        Map<String, Integer> holdings;
     }
 
-    void listStocks() {
-        System.out.println("Market Stocks:");
-        for (Stock s : stocks.values()) System.out.println(s);
+    private static final class OldUser implements Serializable {
+        private static final long serialVersionUID = 4606710321348256911L;
+        String username;
+        double balance;
+        OldPortfolio portfolio;
+        List<OldTransaction> transactions;
     }
 
-    // Simulate price update (optional)
-    void fluctuatePrices() {
-        Random rand = new Random();
-        for (Stock s : stocks.values()) {
-            double changePercent = (rand.nextDouble() - 0.5) * 0.1; // ±5%
-            double newPrice = s.getPrice() * (1 + changePercent);
-            s.updatePrice(Math.round(newPrice * 100.0) / 100.0);
+    private static final Map<String, ObjectStreamClass> OLD_CLASSES = Map.of(
+            "User", ObjectStreamClass.lookup(OldUser.class),
+            "Portfolio", ObjectStreamClass.lookup(OldPortfolio.class),
+            "Transaction", ObjectStreamClass.lookup(OldTransaction.class),
+            "Stock", ObjectStreamClass.lookup(OldStock.class));
+
+    final double balance;
+    final Map<String, Integer> holdings; // by upper-case symbol
+    // Fills in the order they were made
+    final String[] symbols;
+    final Transaction.Type[] sides;
+    final int[] quantities;
+    final double[] prices;
+    final long[] epochNanos;
+
+    private LegacyAccount(OldUser user) throws InvalidObjectException {
+        balance = user.balance;
+        holdings = new HashMap<>();
+        if (user.portfolio != null && user.portfolio.holdings != null) {
+            for (Map.Entry<String, Integer> h : user.portfolio.holdings.entrySet()) {
+                if (h.getValue() != null && h.getValue() != 0) holdings.merge(h.getKey().toUpperCase(Locale.ROOT), h.getValue(), Integer::sum);
+            }
+        }
+        List<OldTransaction> fills = user.transactions == null ? List.of() : user.transactions;
+        int n = fills.size();
+        symbols = new String[n];
+        sides = new Transaction.Type[n];
+        quantities = new int[n];
+        prices = new double[n];
+        epochNanos = new long[n];
+        for (int i = 0; i < n; i++) {
+            OldTransaction t = fills.get(i);
+            if (t == null || t.stock == null || t.stock.symbol == null || t.type == null || t.timestamp == null) {
+                throw new InvalidObjectException("Transaction " + i + " is incomplete");
+            }
+            symbols[i] = t.stock.symbol.toUpperCase(Locale.ROOT);
+            sides[i] = t.type;
+            quantities[i] = t.quantity;
+            prices[i] = t.price;
+            Instant at = t.timestamp.atZone(ZoneId.systemDefault()).toInstant();
+            epochNanos[i] = at.getEpochSecond() * 1_000_000_000L + at.getNano();
+        }
+    }
+
+    static LegacyAccount read(Path file) throws IOException {
+        try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(Files.newInputStream(file))) {
+            @Override
+            protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+                ObjectStreamClass saved = super.readClassDescriptor();
+                ObjectStreamClass local = OLD_CLASSES.get(saved.getName());
+                if (local == null) return saved;
+                if (local.getSerialVersionUID() != saved.getSerialVersionUID()) {
+                    throw new InvalidClassException(saved.getName(), "not the layout " + file.getFileName() + " was written with");
+                }
+                return local;
+            }
+        }) {
+            return new LegacyAccount((OldUser) in.readObject());
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException(file + " is not a saved account", e);
         }
     }
 }
 
-class FileHandler {
-    static void saveUser(User user) {
-        try (ObjectOutputStream out = new ObjectOutputStream(new FileOutputStream(user.username + ".dat"))) {
-            out.writeObject(user);
-            System.out.println("Portfolio saved successfully.");
+// Serves one shared Market to many traders over a line protocol on a local socket, one session
+// thread per connection. Commands and replies are single lines:
+//   LOGIN <user>          -> OK <balance>
+//   BUY|SELL <sym> <qty>  -> FILLED <price> | REJECTED <status>
+//   PRICE <sym>           -> OK <price> | REJECTED UNKNOWN_SYMBOL
+//   EXPOSURE <sym>        -> OK <net shares> <net exposure> across all accounts | REJECTED UNKNOWN_SYMBOL
+//   BALANCE               -> OK <balance> <portfolio value> <realized P&L>
+//   SYMBOLS               -> OK <sym> <sym> ...
+//   QUIT                  -> BYE
+// anything else gets ERROR <message>. Replies are flushed once no further command is buffered, so a
+// client may pipeline. The session registry allows one live session per username; accounts outlive
+// their sessions and, given a directory, are persisted through an AccountStore each. Every account
+// that ever logged in stays in memory until close(), so its shares keep counting in EXPOSURE, but an
+// account with no session has its portfolio suspended and no longer listens to price changes.
+class TradingServer implements Closeable {
+    static final double STARTING_BALANCE = 10_000.0;
+    private static final long SESSION_STACK_BYTES = 256 << 10;
+    static final int MAX_LINE_CHARS = 1024; // longer command lines are skipped and answered with ERROR
+
+    private final Market market;
+    private final OrderEngine engine;
+    private final Path accountsDir; // null keeps accounts in memory only
+    private final ServerSocket socket;
+    private final ExecutorService sessionThreads = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(null, r, "trading-session", SESSION_STACK_BYTES);
+        t.setDaemon(true);
+        return t;
+    });
+    private final Thread acceptor;
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, User> accounts = new ConcurrentHashMap<>();
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private final AtomicLong orders = new AtomicLong();
+    private volatile RiskLimits limits = RiskLimits.NONE;
+
+    // Port 0 picks a free port; see port()
+    TradingServer(Market market, Path accountsDir, int port) throws IOException {
+        this.market = market;
+        this.engine = new OrderEngine(market);
+        this.accountsDir = accountsDir;
+        this.socket = new ServerSocket(port, 1024, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "trading-accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int port() {
+        return socket.getLocalPort();
+    }
+
+    int sessionCount() {
+        return sessions.size();
+    }
+
+    long ordersExecuted() {
+        return orders.get();
+    }
+
+    // Limits for every account from its next login on
+    void setRiskLimits(RiskLimits limits) {
+        this.limits = limits;
+    }
+
+    // The account for username, whether or not it has a session open; null if it never logged in
+    User account(String username) {
+        return accounts.get(username);
+    }
+
+    void awaitClose() throws InterruptedException {
+        closed.await();
+    }
+
+    // Saves and closes every account even if some fail; the first failure is thrown, the rest suppressed
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed.getCount() == 0) return;
+        IOException failure = null;
+        try {
+            socket.close();
+            for (Session session : sessions.values()) session.disconnect();
+            sessionThreads.shutdown();
+            try {
+                sessionThreads.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (User user : accounts.values()) {
+                if (user.store == null) continue;
+                try {
+                    synchronized (user) {
+                        user.store.snapshot(user);
+                    }
+                } catch (IOException | UncheckedIOException e) {
+                    failure = accumulate(failure, new IOException("Saving " + user.username + " failed", e));
+                } finally {
+                    try {
+                        user.store.close();
+                    } catch (IOException e) {
+                        failure = accumulate(failure, new IOException("Closing " + user.username + " failed", e));
+                    }
+                }
+            }
+        } finally {
+            closed.countDown();
+        }
+        if (failure != null) throw failure;
+    }
+
+    private static IOException accumulate(IOException first, IOException next) {
+        if (first == null) return next;
+        first.addSuppressed(next);
+        return first;
+    }
+
+    private void accept() {
+        while (!socket.isClosed()) {
+            try {
+                Socket connection = socket.accept();
+                connection.setTcpNoDelay(true);
+                sessionThreads.execute(new Session(connection));
+            } catch (IOException e) {
+                if (!socket.isClosed()) System.err.println("Accept failed: " + e.getMessage());
+            } catch (RejectedExecutionException e) {
+                return; // shutting down
+            }
+        }
+    }
+
+    // Loads outside the accounts map, so file I/O never holds up logins that share its bin. The session
+    // registry lets only one session per name get here at a time.
+    private User login(String username) {
+        User user = accounts.get(username);
+        if (user != null) return user;
+        AccountStore store = null;
+        try {
+            if (accountsDir == null) {
+                user = new User(username, STARTING_BALANCE);
+            } else {
+                store = AccountStore.open(accountsDir, username);
+                user = store.load(username, market);
+                if (user == null) {
+                    user = new User(username, STARTING_BALANCE);
+                    store.create(user);
+                }
+            }
         } catch (IOException e) {
-            System.out.println("Error saving portfolio: " + e.getMessage());
+            closeQuietly(store);
+            throw new UncheckedIOException("Cannot open account " + username, e);
         }
+        User raced = accounts.putIfAbsent(username, user);
+        if (raced == null) return user;
+        closeQuietly(store);
+        return raced;
     }
 
-    static User loadUser(String username) {
-        try (ObjectInputStream in = new ObjectInputStream(new FileInputStream(username + ".dat"))) {
-            User user = (User) in.readObject();
-            System.out.println("Portfolio loaded successfully.");
-            return user;
-        } catch (IOException | ClassNotFoundException e) {
-            System.out.println("No saved portfolio found. Starting fresh.");
-            return null;
+    private static void closeQuietly(Closeable store) {
+        if (store == null) return;
+        try {
+            store.close();
+        } catch (IOException ignored) {
+            // nothing was written through it
+        }
+    }
+
+    private final class Session implements Runnable {
+        private final Socket connection;
+        private final StringBuilder lineBuffer = new StringBuilder();
+        private boolean overlong; // the last line read was cut off at MAX_LINE_CHARS
+        private String username;
+        private User user;
+
+        Session(Socket connection) {
+            this.connection = connection;
+        }
+
+        void disconnect() {
+            try {
+                connection.close();
+            } catch (IOException ignored) {
+                // already closed
+            }
+        }
+
+        @Override
+        public void run() {
+            try (connection;
+                 BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8));
+                 Writer out = new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = nextLine(in)) != null) {
+                    boolean quit = !overlong && line.trim().equalsIgnoreCase("QUIT");
+                    out.write(quit ? "BYE" : overlong ? "ERROR line longer than " + MAX_LINE_CHARS + " characters" : handle(line));
+                    out.write('\n');
+                    if (quit) break;
+                    if (!in.ready()) out.flush();
+                }
+            } catch (IOException e) {
+                // client went away; the account stays registered
+            } finally {
+                if (username != null) {
+                    sessions.remove(username, this);
+                    synchronized (user) {
+                        // A new session may already have taken over; it resumed the portfolio itself
+                        if (!sessions.containsKey(username)) user.portfolio.suspend();
+                    }
+                    if (user.store != null) {
+                        try {
+                            user.store.save();
+                        } catch (IOException e) {
+                            System.err.println("Saving " + username + " failed: " + e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+
+        // Like readLine, but keeps at most MAX_LINE_CHARS of a line; the rest is read and dropped
+        private String nextLine(BufferedReader in) throws IOException {
+            lineBuffer.setLength(0);
+            overlong = false;
+            int c;
+            while ((c = in.read()) >= 0 && c != '\n') {
+                if (lineBuffer.length() < MAX_LINE_CHARS) lineBuffer.append((char) c);
+                else overlong = true;
+            }
+            if (c < 0 && lineBuffer.length() == 0) return null;
+            if (lineBuffer.length() > 0 && lineBuffer.charAt(lineBuffer.length() - 1) == '\r') lineBuffer.setLength(lineBuffer.length() - 1);
+            return lineBuffer.toString();
+        }
+
+        private String handle(String line) {
+            String[] words = line.trim().split("\\s+");
+            String command = words[0].toUpperCase();
+            if (command.equals("LOGIN")) return words.length == 2 ? login(words[1]) : "ERROR usage: LOGIN <user>";
+            if (user == null) return "ERROR log in first";
+            switch (command) {
+                case "BUY":
+                case "SELL": {
+                    if (words.length != 3) return "ERROR usage: " + command + " <symbol> <quantity>";
+                    int quantity;
+                    try {
+                        quantity = Integer.parseInt(words[2]);
+                    } catch (NumberFormatException e) {
+                        return "ERROR bad quantity " + words[2];
+                    }
+                    Transaction.Type side = command.equals("BUY") ? Transaction.Type.BUY : Transaction.Type.SELL;
+                    OrderResult result = engine.execute(user, side, words[1], quantity);
+                    orders.incrementAndGet();
+                    return result.isFilled() ? "FILLED " + result.price : "REJECTED " + result.status;
+                }
+                case "PRICE": {
+                    if (words.length != 2) return "ERROR usage: PRICE <symbol>";
+                    Stock stock = market.getStock(words[1]);
+                    return stock == null ? "REJECTED " + OrderResult.Status.UNKNOWN_SYMBOL : "OK " + stock.getPrice();
+                }
+                case "EXPOSURE": {
+                    if (words.length != 2) return "ERROR usage: EXPOSURE <symbol>";
+                    Stock stock = market.getStock(words[1]);
+                    if (stock == null) return "REJECTED " + OrderResult.Status.UNKNOWN_SYMBOL;
+                    return "OK " + market.netShares(stock.id) + " " + market.netExposure(stock.symbol);
+                }
+                case "BALANCE":
+                    synchronized (user) {
+                        return "OK " + user.balance + " " + user.portfolio.getValue() + " " + user.portfolio.getRealizedPnl();
+                    }
+                case "SYMBOLS": {
+                    StringBuilder reply = new StringBuilder("OK");
+                    for (Stock stock : market.getStocks()) reply.append(' ').append(stock.symbol);
+                    return reply.toString();
+                }
+                default:
+                    return "ERROR unknown command " + words[0];
+            }
+        }
+
+        private String login(String name) {
+            if (user != null) return "ERROR already logged in as " + username;
+            if (sessions.putIfAbsent(name, this) != null) return "ERROR " + name + " is already logged in";
+            try {
+                user = TradingServer.this.login(name);
+            } catch (UncheckedIOException e) {
+                sessions.remove(name, this);
+                return "ERROR " + e.getMessage();
+            }
+            username = name;
+            synchronized (user) {
+                user.limits = limits;
+                user.portfolio.resume();
+                return "OK " + user.balance;
+            }
         }
     }
 }
 
 public class StockTradingPlatform {
+    private static final long SERVER_TICK_MILLIS = 1_000;
+
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            // --server [port] [--limits maxPosition,maxOrderNotional,maxConcentration]
+            int port = 7070;
+            RiskLimits limits = RiskLimits.NONE;
+            try {
+                for (int i = 1; i < args.length; i++) {
+                    if (args[i].equals("--limits") && i + 1 < args.length) limits = RiskLimits.parse(args[++i]);
+                    else if ((port = parsePort(args[i])) < 0) throw new IllegalArgumentException("Bad port: " + args[i]);
+                }
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                System.out.println("Usage: StockTradingPlatform --server [port] [--limits maxPosition,maxOrderNotional,maxConcentration]");
+                return;
+            }
+            serve(port, limits);
+            return;
+        }
         Scanner scanner = new Scanner(System.in);
         Market market = new Market();
+        market.trackHistory(PriceHistory.Settings.DEFAULT);
+        OrderEngine engine = new OrderEngine(market);
+        MarketDataFeed feed = new MarketDataFeed(1024);
+        feed.subscribe("price-updater", MarketDataFeed.priceUpdater());
 
         System.out.print("Enter username: ");
         String username = scanner.nextLine();
 
-        User user = FileHandler.loadUser(username);
-        if (user == null) {
-            user = new User(username, 10000.0); // Starting balance $10,000
+        AccountStore store;
+        User user;
+        try {
+            store = AccountStore.open(username);
+            user = store.load(username, market);
+            if (user == null) {
+                System.out.println("No saved portfolio found. Starting fresh.");
+                user = new User(username, 10000.0); // Starting balance $10,000
+                store.create(user);
+            } else {
+                System.out.println("Portfolio loaded successfully.");
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening account: " + e.getMessage());
+            return;
         }
 
         boolean running = true;
@@ -226,6 +2959,7 @@ public class StockTradingPlatform {
             System.out.println("5. View transaction history");
             System.out.println("6. Save portfolio");
             System.out.println("7. Exit");
+            System.out.println("8. View price history");
             System.out.print("Choose an option: ");
 
             int choice = scanner.nextInt();
@@ -243,7 +2977,7 @@ public class StockTradingPlatform {
                         System.out.print("Enter quantity: ");
                         int qty = scanner.nextInt();
                         scanner.nextLine();
-                        user.buyStock(buyStock, qty);
+                        System.out.println(engine.buy(user, buySymbol, qty));
                     } else {
                         System.out.println("Stock not found.");
                     }
@@ -256,30 +2990,124 @@ public class StockTradingPlatform {
                         System.out.print("Enter quantity: ");
                         int qty = scanner.nextInt();
                         scanner.nextLine();
-                        user.sellStock(sellStock, qty);
+                        System.out.println(engine.sell(user, sellSymbol, qty));
                     } else {
                         System.out.println("Stock not found.");
                     }
                     break;
                 case 4:
-                    user.printPortfolio(market);
+                    user.printPortfolio();
                     break;
                 case 5:
                     user.printTransactions();
                     break;
                 case 6:
-                    FileHandler.saveUser(user);
+                    try {
+                        store.save();
+                        System.out.println("Portfolio saved successfully.");
+                    } catch (IOException e) {
+                        System.out.println("Error saving portfolio: " + e.getMessage());
+                    }
                     break;
                 case 7:
+                    feed.close(); // every published tick is applied before the snapshot
+                    try {
+                        synchronized (user) {
+                            store.snapshot(user);
+                        }
+                        store.close();
+                    } catch (IOException e) {
+                        System.out.println("Error saving portfolio: " + e.getMessage());
+                    }
                     System.out.println("Goodbye!");
                     running = false;
                     break;
+                case 8:
+                    System.out.print("Enter stock symbol: ");
+                    PriceHistory history = market.history(scanner.nextLine().toUpperCase());
+                    if (history != null) printHistory(history);
+                    else System.out.println("Stock not found.");
+                    break;
                 default:
                     System.out.println("Invalid option!");
             }
-            // Optionally fluctuate prices over time
-            // market.fluctuatePrices();
+            // Prices move between actions through the feed, which is also what fills the price history;
+            // draining it means the next action sees the new prices
+            if (running) {
+                market.fluctuatePrices(feed);
+                feed.drain();
+            }
         }
         scanner.close();
     }
+
+    private static void printHistory(PriceHistory history) {
+        System.out.printf("Last %.2f, SMA %.2f, EMA %.2f, VWAP %.2f, volatility %.4f (%d ticks)%n",
+                history.price(0), history.sma(), history.ema(), history.vwap(), history.volatility(), history.ticks());
+        if (history.barIntervals() == 0) return;
+        PriceHistory.BarSeries bars = history.bars(history.barIntervals() - 1); // the longest interval
+        System.out.println("Recent bars:");
+        for (long i = Math.max(bars.first(), bars.count() - 10); i < bars.count(); i++) System.out.println(bars.bar(i));
+        System.out.println(bars.current() + " (in progress)");
+    }
+
+    // 0..65535, or -1 if the argument is not a port number
+    private static int parsePort(String arg) {
+        try {
+            int port = Integer.parseInt(arg);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Server mode: accounts are kept in the working directory until the process is stopped, when the
+    // shutdown hook closes the server and saves them. Prices move once a tick through a MarketDataFeed,
+    // whose consumer re-marks every portfolio holding the stock.
+    private static void serve(int port, RiskLimits limits) {
+        Market market = new Market();
+        TradingServer server;
+        try {
+            server = new TradingServer(market, Paths.get("").toAbsolutePath(), port);
+        } catch (IOException e) {
+            System.out.println("Error starting server: " + e.getMessage());
+            return;
+        }
+        server.setRiskLimits(limits);
+        MarketDataFeed feed = new MarketDataFeed(1024);
+        feed.subscribe("price-updater", MarketDataFeed.priceUpdater());
+        Thread ticker = new Thread(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(SERVER_TICK_MILLIS);
+                    market.fluctuatePrices(feed); // the only producer
+                }
+            } catch (InterruptedException e) {
+                // shutting down
+            }
+        }, "market-ticker");
+        ticker.setDaemon(true);
+        ticker.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            ticker.interrupt();
+            try {
+                ticker.join();
+                feed.close();
+            } catch (InterruptedException | IllegalStateException e) {
+                System.err.println("Error stopping the price feed: " + e);
+            }
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.err.println("Error saving accounts: " + e.getMessage());
+            }
+        }));
+        System.out.println("Trading server listening on port " + server.port()
+                + (limits == RiskLimits.NONE ? "" : " with risk limits " + limits));
+        try {
+            server.awaitClose();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 }
@@ -2,50 +2,924 @@
 //Calculate average, highest, and lowest scores. 
 //Use arrays or ArrayLists to store and manage data. 
 //Display a summary report of all students.
-import java.util.ArrayList;
-import java.util.Scanner;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Mergeable count/sum/min/max accumulator; the sum is Neumaier-compensated so large rosters keep full precision
+class GradeStats {
+    private long count;
+    private double sum;
+    private double compensation;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void add(double grade) {
+        addToSum(grade);
+        if (grade < min) min = grade;
+        if (grade > max) max = grade;
+        count++;
+    }
+
+    void merge(GradeStats other) {
+        if (other.count == 0) return;
+        addToSum(other.sum);
+        compensation += other.compensation;
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+        count += other.count;
+    }
+
+    private void addToSum(double value) {
+        double t = sum + value;
+        if (Math.abs(sum) >= Math.abs(value)) compensation += (sum - t) + value;
+        else compensation += (value - t) + sum;
+        sum = t;
+    }
+
+    long getCount() { return count; }
+
+    double getSum() { return sum + compensation; }
+
+    double getAverage() { return count == 0 ? 0.0 : getSum() / count; }
+
+    double getHighest() { return count == 0 ? 0.0 : max; }
+
+    double getLowest() { return count == 0 ? 0.0 : min; }
+}
+
+// Fixed-memory histogram of grades rounded to tenths over 0-100 (plus under/overflow), mergeable
+// across students and threads. Quantiles use nearest rank and return the bucket's tenth (clamped to
+// the observed min and max), so they are exact for grades on a 0.1 grid. About 8 KB each: build one
+// per report or query rather than keeping one per student.
+class GradeHistogram {
+    private static final int BUCKETS = 1001; // tenths 0..1000
+
+    private final long[] counts = new long[BUCKETS + 2]; // [0] underflow, [BUCKETS + 1] overflow
+    private long count;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    void add(double grade) {
+        counts[bucketOf(grade)]++;
+        if (grade < min) min = grade;
+        if (grade > max) max = grade;
+        count++;
+    }
+
+    void addAll(GradeBuffer grades) {
+        for (int i = 0; i < grades.size(); i++) add(grades.get(i));
+    }
+
+    void merge(GradeHistogram other) {
+        if (other.count == 0) return;
+        for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+        if (other.min < min) min = other.min;
+        if (other.max > max) max = other.max;
+        count += other.count;
+    }
+
+    long getCount() { return count; }
+
+    // q in [0, 1]; returns 0.0 when empty, like the other summaries
+    double quantile(double q) {
+        if (q < 0 || q > 1) throw new IllegalArgumentException("Quantile must be between 0 and 1: " + q);
+        if (count == 0) return 0.0;
+        long rank = Math.max(1, (long) Math.ceil(q * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (seen + counts[i] >= rank) {
+                double value;
+                if (i == 0) value = min;
+                else if (i == BUCKETS + 1) value = max;
+                else value = (i - 1) / 10.0; // the bucket's tenth
+                return Math.min(Math.max(value, min), max);
+            }
+            seen += counts[i];
+        }
+        return max;
+    }
+
+    double median() { return quantile(0.5); }
+
+    // Number of grades in [from, to), both ends and the grades rounded to tenths
+    long countBetween(double from, double to) {
+        long total = 0;
+        int end = to == Double.POSITIVE_INFINITY ? counts.length : bucketOf(to);
+        for (int i = bucketOf(from); i < end; i++) total += counts[i];
+        return total;
+    }
+
+    private static int bucketOf(double grade) {
+        long tenths = Math.round(grade * 10); // integer tenths, so grid values land in their own bucket
+        if (tenths < 0) return 0;
+        if (tenths >= BUCKETS) return BUCKETS + 1;
+        return 1 + (int) tenths;
+    }
+}
+
+// Growable double[] of grades with running stats, so summaries need no pass over the data
+class GradeBuffer {
+    private double[] values;
+    private int size;
+    private final GradeStats stats = new GradeStats();
+
+    GradeBuffer() {
+        this(8);
+    }
+
+    GradeBuffer(int initialCapacity) {
+        values = new double[Math.max(initialCapacity, 1)];
+    }
+
+    void add(double grade) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, values.length + (values.length >> 1) + 1);
+        }
+        values[size++] = grade;
+        stats.add(grade);
+    }
+
+    double get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for length " + size);
+        }
+        return values[index];
+    }
+
+    int size() { return size; }
+
+    boolean isEmpty() { return size == 0; }
+
+    GradeStats stats() { return stats; }
+}
 
 class Student {
     String name;
-    ArrayList<Double> grades;
+    GradeBuffer grades;
+    StudentRanking.Node rankNode; // set while the student is in a StudentRanking
 
     Student(String name) {
         this.name = name;
-        this.grades = new ArrayList<>();
+        this.grades = new GradeBuffer();
     }
 
     void addGrade(double grade) {
         grades.add(grade);
+        if (rankNode != null) rankNode.ranking.update(this);
     }
 
     double getAverage() {
-        if (grades.isEmpty()) return 0.0;
-        double sum = 0;
-        for (double g : grades) sum += g;
-        return sum / grades.size();
+        return grades.stats().getAverage();
     }
 
     double getHighest() {
-        if (grades.isEmpty()) return 0.0;
-        double max = grades.get(0);
-        for (double g : grades) {
-            if (g > max) max = g;
-        }
-        return max;
+        return grades.stats().getHighest();
     }
 
     double getLowest() {
-        if (grades.isEmpty()) return 0.0;
-        double min = grades.get(0);
-        for (double g : grades) {
-            if (g < min) min = g;
+        return grades.stats().getLowest();
+    }
+
+    // p in [0, 100]; from a histogram built for this query, so no student keeps one
+    double getPercentile(double p) {
+        GradeHistogram histogram = new GradeHistogram();
+        histogram.addAll(grades);
+        return histogram.quantile(p / 100);
+    }
+
+    double getMedian() {
+        return getPercentile(50);
+    }
+}
+
+// Read-only view of a roster for reporting; grades may live on the heap or in a mapped file
+interface GradeRoster {
+    int size();
+
+    String name(int index);
+
+    // Returns the student's stats and adds its grades to the histogram, walking the grades at most once
+    GradeStats scan(int index, GradeHistogram histogram);
+}
+
+class StudentRoster implements GradeRoster {
+    private final List<Student> students;
+
+    StudentRoster(List<Student> students) {
+        this.students = students;
+    }
+
+    public int size() { return students.size(); }
+
+    public String name(int index) { return students.get(index).name; }
+
+    public GradeStats scan(int index, GradeHistogram histogram) {
+        GradeBuffer grades = students.get(index).grades;
+        histogram.addAll(grades);
+        return grades.stats();
+    }
+}
+
+// Per-student rows plus overall stats and grade distribution for a roster, built in one fork-join pass.
+// Leaves are split at fixed index boundaries and merged in index order, so the result is the same
+// for any pool size.
+class GradeReport {
+    private static final int LEAF_SIZE = 4096;
+
+    final GradeRoster roster;
+    final double[] averages;
+    final double[] highest;
+    final double[] lowest;
+    final GradeStats overall;
+    final GradeHistogram distribution;
+
+    private GradeReport(GradeRoster roster) {
+        this.roster = roster;
+        this.averages = new double[roster.size()];
+        this.highest = new double[roster.size()];
+        this.lowest = new double[roster.size()];
+        this.overall = new GradeStats();
+        this.distribution = new GradeHistogram();
+    }
+
+    static GradeReport compute(GradeRoster roster) {
+        return compute(roster, ForkJoinPool.commonPool());
+    }
+
+    static GradeReport compute(GradeRoster roster, ForkJoinPool pool) {
+        GradeReport report = new GradeReport(roster);
+        Partial result = pool.invoke(report.new Task(0, roster.size()));
+        report.overall.merge(result.stats);
+        report.distribution.merge(result.histogram);
+        return report;
+    }
+
+    private static class Partial {
+        final GradeStats stats = new GradeStats();
+        final GradeHistogram histogram = new GradeHistogram();
+
+        void merge(Partial other) {
+            stats.merge(other.stats);
+            histogram.merge(other.histogram);
+        }
+    }
+
+    private class Task extends RecursiveTask<Partial> {
+        private static final long serialVersionUID = 1L; // ForkJoinTask is Serializable; tasks are never serialized
+
+        private final int from;
+        private final int to;
+
+        Task(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Partial compute() {
+            if (to - from <= LEAF_SIZE) {
+                Partial acc = new Partial();
+                for (int i = from; i < to; i++) {
+                    GradeStats stats = roster.scan(i, acc.histogram);
+                    averages[i] = stats.getAverage();
+                    highest[i] = stats.getHighest();
+                    lowest[i] = stats.getLowest();
+                    acc.stats.merge(stats);
+                }
+                return acc;
+            }
+            int mid = (from + to) >>> 1;
+            Task left = new Task(from, mid);
+            left.fork();
+            Partial right = new Task(mid, to).compute();
+            Partial acc = left.join();
+            acc.merge(right);
+            return acc;
         }
-        return min;
+    }
+}
+
+// Order-statistic treap of students keyed by average (ties go to whoever was added first). Kept current by
+// Student.addGrade, so updates, rank and range counts are O(log n) and top-k/range listings O(log n + k).
+// Not thread-safe.
+class StudentRanking {
+    static final class Node {
+        final StudentRanking ranking;
+        final Student student;
+        final long seq;
+        final int priority;
+        double average;
+        int size = 1;
+        Node left;
+        Node right;
+
+        Node(StudentRanking ranking, Student student, long seq) {
+            this.ranking = ranking;
+            this.student = student;
+            this.seq = seq;
+            long h = seq * 0x9E3779B97F4A7C15L;
+            this.priority = (int) (h ^ (h >>> 32));
+            this.average = student.getAverage();
+        }
+
+        void resize() {
+            size = 1 + sizeOf(left) + sizeOf(right);
+        }
+    }
+
+    private Node root;
+    private long nextSeq;
+    private Node splitLeft;
+    private Node splitRight;
+
+    static StudentRanking of(List<Student> students) {
+        StudentRanking ranking = new StudentRanking();
+        for (Student s : students) ranking.add(s);
+        return ranking;
+    }
+
+    void add(Student student) {
+        if (student.rankNode != null) throw new IllegalStateException(student.name + " is already ranked");
+        Node node = new Node(this, student, nextSeq++);
+        student.rankNode = node;
+        root = insert(root, node);
+    }
+
+    boolean remove(Student student) {
+        Node node = student.rankNode;
+        if (node == null || node.ranking != this) return false;
+        root = delete(root, node);
+        student.rankNode = null;
+        return true;
+    }
+
+    // Re-keys the student after its average changed
+    void update(Student student) {
+        Node node = student.rankNode;
+        double average = student.getAverage();
+        if (Double.compare(average, node.average) == 0) return;
+        root = delete(root, node);
+        node.average = average;
+        node.left = node.right = null;
+        node.size = 1;
+        root = insert(root, node);
+    }
+
+    int size() { return sizeOf(root); }
+
+    // 1 for the highest average; 0 if the student is not in this ranking
+    int rankOf(Student student) {
+        Node node = student.rankNode;
+        if (node == null || node.ranking != this) return 0;
+        int above = 0;
+        Node t = root;
+        while (t != node) {
+            if (less(node, t)) {
+                above += 1 + sizeOf(t.right);
+                t = t.left;
+            } else {
+                t = t.right;
+            }
+        }
+        return above + sizeOf(node.right) + 1;
+    }
+
+    List<Student> top(int k) {
+        return walk(k, true);
+    }
+
+    List<Student> bottom(int k) {
+        return walk(k, false);
+    }
+
+    // Students with low <= average <= high, highest first
+    List<Student> between(double low, double high) {
+        List<Student> result = new ArrayList<>();
+        collect(root, low, high, result);
+        return result;
+    }
+
+    int countBetween(double low, double high) {
+        if (low > high) return 0;
+        return countAtLeast(low) - countAbove(high);
+    }
+
+    private int countAtLeast(double value) {
+        int count = 0;
+        for (Node t = root; t != null; ) {
+            if (t.average >= value) {
+                count += 1 + sizeOf(t.right);
+                t = t.left;
+            } else {
+                t = t.right;
+            }
+        }
+        return count;
+    }
+
+    private int countAbove(double value) {
+        int count = 0;
+        for (Node t = root; t != null; ) {
+            if (t.average > value) {
+                count += 1 + sizeOf(t.right);
+                t = t.left;
+            } else {
+                t = t.right;
+            }
+        }
+        return count;
+    }
+
+    private void collect(Node t, double low, double high, List<Student> out) {
+        if (t == null) return;
+        if (t.average <= high) collect(t.right, low, high, out);
+        if (t.average >= low && t.average <= high) out.add(t.student);
+        if (t.average >= low) collect(t.left, low, high, out);
+    }
+
+    private List<Student> walk(int k, boolean descending) {
+        List<Student> result = new ArrayList<>(Math.min(Math.max(k, 0), size()));
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        Node t = root;
+        while (result.size() < k && (t != null || !stack.isEmpty())) {
+            while (t != null) {
+                stack.push(t);
+                t = descending ? t.right : t.left;
+            }
+            t = stack.pop();
+            result.add(t.student);
+            t = descending ? t.left : t.right;
+        }
+        return result;
+    }
+
+    private Node insert(Node t, Node node) {
+        if (t == null) return node;
+        if (node.priority > t.priority) {
+            split(t, node);
+            node.left = splitLeft;
+            node.right = splitRight;
+            splitLeft = splitRight = null;
+            node.resize();
+            return node;
+        }
+        if (less(node, t)) t.left = insert(t.left, node);
+        else t.right = insert(t.right, node);
+        t.resize();
+        return t;
+    }
+
+    private Node delete(Node t, Node node) {
+        if (t == node) return merge(t.left, t.right);
+        if (less(node, t)) t.left = delete(t.left, node);
+        else t.right = delete(t.right, node);
+        t.resize();
+        return t;
+    }
+
+    // Splits t into nodes ordered before key (splitLeft) and after it (splitRight)
+    private void split(Node t, Node key) {
+        if (t == null) {
+            splitLeft = splitRight = null;
+        } else if (less(t, key)) {
+            split(t.right, key);
+            t.right = splitLeft;
+            t.resize();
+            splitLeft = t;
+        } else {
+            split(t.left, key);
+            t.left = splitRight;
+            t.resize();
+            splitRight = t;
+        }
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            a.resize();
+            return a;
+        }
+        b.left = merge(a, b.left);
+        b.resize();
+        return b;
+    }
+
+    // Ascending order: lower average first, and among equal averages the later-added student first
+    private static boolean less(Node a, Node b) {
+        int c = Double.compare(a.average, b.average);
+        return c < 0 || (c == 0 && a.seq > b.seq);
+    }
+
+    private static int sizeOf(Node t) {
+        return t == null ? 0 : t.size;
+    }
+}
+
+// Streams "name,grade" rows with a buffered byte-level parser; only the current line is held in memory.
+// The first non-blank line is skipped as a header only if its columns are exactly "name" and "grade"
+// (any case); a non-numeric grade on any other line, the first included, is an error.
+class GradeCsvReader {
+    private static final double[] POW10 = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[1 << 16];
+    private byte[] line = new byte[256];
+    private byte[] lastName = new byte[256];
+    private int lastNameLength = -1;
+    private Student lastStudent;
+    // Open-addressing table from raw name bytes to Student, so known names are found without decoding a String
+    private byte[][] tableKeys = new byte[1024][];
+    private int[] tableHashes = new int[1024];
+    private Student[] tableValues = new Student[1024];
+    private final List<Student> students = new ArrayList<>();
+    private long lineNumber;
+    private boolean pastFirstRow;
+    private long gradesRead;
+
+    GradeCsvReader(InputStream in) {
+        this.in = in;
+    }
+
+    // Reads every row, adding grades to the student of that name (created on first sight, in input order)
+    List<Student> readAll() throws IOException {
+        int lineLength = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            for (int i = 0; i < n; i++) {
+                byte b = buffer[i];
+                if (b == '\n') {
+                    processLine(lineLength);
+                    lineLength = 0;
+                } else {
+                    if (lineLength == line.length) line = Arrays.copyOf(line, line.length * 2);
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        if (lineLength > 0) processLine(lineLength);
+        return students;
+    }
+
+    long getGradesRead() { return gradesRead; }
+
+    private void processLine(int end) {
+        lineNumber++;
+        if (end > 0 && line[end - 1] == '\r') end--;
+        if (end == 0) return;
+
+        int comma = end - 1;
+        while (comma >= 0 && line[comma] != ',') comma--;
+        if (comma < 0) throw malformed("expected name,grade");
+        if (!pastFirstRow) {
+            pastFirstRow = true;
+            if (columnIs(0, comma, "name") && columnIs(comma + 1, end, "grade")) return; // header row
+        }
+
+        double grade;
+        try {
+            grade = parseGrade(comma + 1, end);
+        } catch (NumberFormatException e) {
+            throw malformed("invalid grade");
+        }
+
+        int nameStart = 0;
+        int nameEnd = comma;
+        while (nameStart < nameEnd && line[nameStart] == ' ') nameStart++;
+        while (nameEnd > nameStart && line[nameEnd - 1] == ' ') nameEnd--;
+        if (nameEnd - nameStart >= 2 && line[nameStart] == '"' && line[nameEnd - 1] == '"') {
+            nameStart++;
+            nameEnd--;
+        }
+        if (nameStart == nameEnd) throw malformed("missing name");
+
+        // Exports are usually grouped by student, so consecutive rows skip the name lookup entirely
+        int nameLength = nameEnd - nameStart;
+        if (nameLength != lastNameLength
+                || !Arrays.equals(line, nameStart, nameEnd, lastName, 0, nameLength)) {
+            lastStudent = studentFor(nameStart, nameEnd);
+            if (lastName.length < nameLength) lastName = new byte[Math.max(nameLength, lastName.length * 2)];
+            System.arraycopy(line, nameStart, lastName, 0, nameLength);
+            lastNameLength = nameLength;
+        }
+        lastStudent.addGrade(grade);
+        gradesRead++;
+    }
+
+    private Student studentFor(int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) hash = 31 * hash + line[i];
+        int mask = tableKeys.length - 1;
+        int slot = (hash ^ (hash >>> 16)) & mask;
+        byte[] key;
+        while ((key = tableKeys[slot]) != null) {
+            if (tableHashes[slot] == hash && Arrays.equals(key, 0, key.length, line, start, end)) {
+                return tableValues[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+
+        String name = new String(line, start, end - start, StandardCharsets.UTF_8).replace("\"\"", "\"");
+        Student student = new Student(name);
+        tableKeys[slot] = Arrays.copyOfRange(line, start, end);
+        tableHashes[slot] = hash;
+        tableValues[slot] = student;
+        students.add(student);
+        if (students.size() * 2 > tableKeys.length) growTable();
+        return student;
+    }
+
+    private void growTable() {
+        byte[][] oldKeys = tableKeys;
+        int[] oldHashes = tableHashes;
+        Student[] oldValues = tableValues;
+        tableKeys = new byte[oldKeys.length * 2][];
+        tableHashes = new int[oldKeys.length * 2];
+        tableValues = new Student[oldKeys.length * 2];
+        int mask = tableKeys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == null) continue;
+            int hash = oldHashes[i];
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (tableKeys[slot] != null) slot = (slot + 1) & mask;
+            tableKeys[slot] = oldKeys[i];
+            tableHashes[slot] = hash;
+            tableValues[slot] = oldValues[i];
+        }
+    }
+
+    // Whether line[start, end) is the lower-case column name, ignoring case and surrounding spaces
+    private boolean columnIs(int start, int end, String column) {
+        while (start < end && line[start] == ' ') start++;
+        while (end > start && line[end - 1] == ' ') end--;
+        if (end - start != column.length()) return false;
+        for (int i = 0; i < column.length(); i++) {
+            if (Character.toLowerCase(line[start + i]) != column.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    // Plain decimals up to 15 significant digits are parsed exactly in place; anything else defers to Double.parseDouble
+    private double parseGrade(int start, int end) {
+        while (start < end && line[start] == ' ') start++;
+        while (end > start && line[end - 1] == ' ') end--;
+        if (start == end) throw new NumberFormatException("empty");
+
+        int i = start;
+        boolean negative = false;
+        if (line[i] == '-' || line[i] == '+') {
+            negative = line[i] == '-';
+            i++;
+        }
+        long digits = 0;
+        int digitCount = 0;
+        int fractionDigits = -1;
+        for (; i < end; i++) {
+            byte b = line[i];
+            if (b >= '0' && b <= '9') {
+                digits = digits * 10 + (b - '0');
+                digitCount++;
+                if (fractionDigits >= 0) fractionDigits++;
+            } else if (b == '.' && fractionDigits < 0) {
+                fractionDigits = 0;
+            } else {
+                break;
+            }
+        }
+        if (i < end || digitCount == 0 || digitCount > 15) {
+            return Double.parseDouble(new String(line, start, end - start, StandardCharsets.US_ASCII));
+        }
+        double value = fractionDigits > 0 ? digits / POW10[fractionDigits] : digits;
+        return negative ? -value : value;
+    }
+
+    private IllegalArgumentException malformed(String reason) {
+        return new IllegalArgumentException("Line " + lineNumber + ": " + reason);
+    }
+}
+
+// Columnar roster file: header, per-student grade offsets, per-student name offsets, UTF-8 names block
+// and one flat little-endian double[] of grades. Every 8-byte value is 8-aligned.
+class RosterFile {
+    static final int MAGIC = 0x53475431; // "SGT1"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+
+    static void save(List<Student> students, Path path) throws IOException {
+        int n = students.size();
+        byte[][] names = new byte[n][];
+        long namesLength = 0;
+        long gradeCount = 0;
+        for (int i = 0; i < n; i++) {
+            names[i] = students.get(i).name.getBytes(StandardCharsets.UTF_8);
+            namesLength += names[i].length;
+            gradeCount += students.get(i).grades.size();
+        }
+
+        // Written next to the target and moved over it, so a crash mid-save leaves the old roster intact
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buf = ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+            buf.putInt(MAGIC).putInt(VERSION).putLong(n).putLong(gradeCount).putLong(namesLength);
+
+            long offset = 0;
+            for (int i = 0; i <= n; i++) {
+                if (buf.remaining() < 8) drain(channel, buf);
+                buf.putLong(offset);
+                if (i < n) offset += students.get(i).grades.size();
+            }
+            offset = 0;
+            for (int i = 0; i <= n; i++) {
+                if (buf.remaining() < 8) drain(channel, buf);
+                buf.putLong(offset);
+                if (i < n) offset += names[i].length;
+            }
+            for (byte[] name : names) {
+                for (int pos = 0; pos < name.length; ) {
+                    if (!buf.hasRemaining()) drain(channel, buf);
+                    int len = Math.min(buf.remaining(), name.length - pos);
+                    buf.put(name, pos, len);
+                    pos += len;
+                }
+            }
+            for (long pad = padding(namesLength); pad > 0; pad--) {
+                if (!buf.hasRemaining()) drain(channel, buf);
+                buf.put((byte) 0);
+            }
+            for (Student s : students) {
+                GradeBuffer grades = s.grades;
+                for (int j = 0; j < grades.size(); j++) {
+                    if (buf.remaining() < 8) drain(channel, buf);
+                    buf.putDouble(grades.get(j));
+                }
+            }
+            drain(channel, buf);
+            channel.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static MappedRoster load(Path path) throws IOException {
+        return new MappedRoster(path);
+    }
+
+    static long padding(long length) {
+        return (8 - (length & 7)) & 7;
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buf) throws IOException {
+        buf.flip();
+        while (buf.hasRemaining()) channel.write(buf);
+        buf.clear();
+    }
+}
+
+// A roster file mapped read-only in 1 GiB segments; names and grades are read from the mapping on demand
+class MappedRoster implements GradeRoster {
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    private final MappedByteBuffer[] segments;
+    private final int studentCount;
+    private final long totalGrades;
+    private final long gradeOffsetsAt;
+    private final long nameOffsetsAt;
+    private final long namesAt;
+    private final long gradesAt;
+
+    MappedRoster(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            int count = (int) ((fileSize + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+            segments = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i << SEGMENT_SHIFT;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(1L << SEGMENT_SHIFT, fileSize - start));
+                segments[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            if (fileSize < RosterFile.HEADER_BYTES || segments[0].getInt(0) != RosterFile.MAGIC) {
+                throw new IOException(path + " is not a grade roster file");
+            }
+            if (segments[0].getInt(4) != RosterFile.VERSION) {
+                throw new IOException("Unsupported roster file version " + segments[0].getInt(4));
+            }
+            long students = readLong(8);
+            totalGrades = readLong(16);
+            long namesLength = readLong(24);
+            if (students < 0 || students >= Integer.MAX_VALUE || totalGrades < 0 || totalGrades > fileSize / 8
+                    || namesLength < 0 || namesLength > fileSize) {
+                throw new IOException(path + " has a corrupt header");
+            }
+            studentCount = (int) students;
+            gradeOffsetsAt = RosterFile.HEADER_BYTES;
+            nameOffsetsAt = gradeOffsetsAt + (students + 1) * 8;
+            namesAt = nameOffsetsAt + (students + 1) * 8;
+            gradesAt = namesAt + namesLength + RosterFile.padding(namesLength);
+            if (gradesAt + totalGrades * 8 != fileSize) {
+                throw new IOException(path + " is truncated or corrupt");
+            }
+            // Every later read trusts these offsets, so they must run from 0 to the block ends without going back
+            checkOffsets(path, gradeOffsetsAt, totalGrades);
+            checkOffsets(path, nameOffsetsAt, namesLength);
+        }
+    }
+
+    public int size() { return studentCount; }
+
+    long totalGrades() { return totalGrades; }
+
+    public String name(int index) {
+        long start = readLong(nameOffsetsAt + index * 8L);
+        byte[] bytes = new byte[(int) (readLong(nameOffsetsAt + (index + 1) * 8L) - start)];
+        long pos = namesAt + start;
+        for (int i = 0; i < bytes.length; ) {
+            ByteBuffer segment = segments[(int) (pos >>> SEGMENT_SHIFT)];
+            int at = (int) (pos & SEGMENT_MASK);
+            int len = Math.min(bytes.length - i, segment.limit() - at);
+            segment.get(at, bytes, i, len);
+            i += len;
+            pos += len;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    int gradeCount(int index) {
+        return (int) (readLong(gradeOffsetsAt + (index + 1) * 8L) - readLong(gradeOffsetsAt + index * 8L));
+    }
+
+    double grade(int index, int j) {
+        if (j < 0 || j >= gradeCount(index)) {
+            throw new IndexOutOfBoundsException("Index " + j + " out of bounds for length " + gradeCount(index));
+        }
+        return readDouble(gradesAt + (readLong(gradeOffsetsAt + index * 8L) + j) * 8);
+    }
+
+    public GradeStats scan(int index, GradeHistogram histogram) {
+        GradeStats stats = new GradeStats();
+        long pos = gradesAt + readLong(gradeOffsetsAt + index * 8L) * 8;
+        long end = gradesAt + readLong(gradeOffsetsAt + (index + 1) * 8L) * 8;
+        for (; pos < end; pos += 8) {
+            double grade = readDouble(pos);
+            stats.add(grade);
+            histogram.add(grade);
+        }
+        return stats;
+    }
+
+    private void checkOffsets(Path path, long tableAt, long blockLength) throws IOException {
+        long previous = readLong(tableAt);
+        if (previous != 0) throw new IOException(path + " has a corrupt offset table");
+        for (long i = 1; i <= studentCount; i++) {
+            long offset = readLong(tableAt + i * 8);
+            if (offset < previous || offset > blockLength) throw new IOException(path + " has a corrupt offset table");
+            previous = offset;
+        }
+        if (previous != blockLength) throw new IOException(path + " has a corrupt offset table");
+    }
+
+    private long readLong(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getLong((int) (pos & SEGMENT_MASK));
+    }
+
+    private double readDouble(long pos) {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].getDouble((int) (pos & SEGMENT_MASK));
     }
 }
 
 public class StudentGradeTracker {
     public static void main(String[] args) {
+        if (args.length == 2 && args[0].equals("--load")) {
+            loadRoster(args[1]);
+            return;
+        }
+        if (args.length == 3 && args[1].equals("--save")) {
+            importGrades(args[0], args[2]);
+            return;
+        }
+        if (args.length > 0) {
+            importGrades(args[0], null);
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
         ArrayList<Student> students = new ArrayList<>();
 
@@ -70,34 +944,109 @@ public class StudentGradeTracker {
             students.add(s);
         }
 
-        // Calculate overall highest and lowest grades (among all students)
-        double overallHighest = Double.MIN_VALUE;
-        double overallLowest = Double.MAX_VALUE;
-        double totalSum = 0;
-        int totalGradesCount = 0;
+        printSummary(students, System.out);
+
+        scanner.close();
+    }
+
+    // Non-interactive mode: reads name,grade rows from a CSV file, or from stdin when the path is "-",
+    // optionally saving the roster to a binary file for --load
+    static void importGrades(String path, String savePath) {
+        long start = System.nanoTime();
+        List<Student> students;
+        long gradesRead;
+        try (InputStream in = path.equals("-") ? System.in : new FileInputStream(path)) {
+            GradeCsvReader reader = new GradeCsvReader(in);
+            students = reader.readAll();
+            gradesRead = reader.getGradesRead();
+        } catch (IOException | IllegalArgumentException e) {
+            System.err.println("Error importing grades: " + e.getMessage());
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (savePath != null) {
+            try {
+                RosterFile.save(students, Paths.get(savePath));
+            } catch (IOException e) {
+                System.err.println("Error saving roster: " + e.getMessage());
+                return;
+            }
+        }
+
+        PrintStream out = bufferedStdout();
+        printSummary(students, out);
+        out.flush();
+        System.err.printf("Imported %d grades for %d students in %d ms (%.0f grades/sec)%n",
+                          gradesRead, students.size(), elapsed / 1_000_000,
+                          gradesRead / Math.max(elapsed / 1e9, 1e-9));
+    }
+
+    static void loadRoster(String path) {
+        long start = System.nanoTime();
+        MappedRoster roster;
+        try {
+            roster = RosterFile.load(Paths.get(path));
+        } catch (IOException e) {
+            System.err.println("Error loading roster: " + e.getMessage());
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
 
-        System.out.println("\n----- Student Summary Report -----");
-        for (Student s : students) {
-            double avg = s.getAverage();
-            double highest = s.getHighest();
-            double lowest = s.getLowest();
+        PrintStream out = bufferedStdout();
+        printSummary(roster, out);
+        out.flush();
+        System.err.printf("Mapped %d grades for %d students in %.2f ms%n",
+                          roster.totalGrades(), roster.size(), elapsed / 1e6);
+    }
 
-            System.out.printf("Student: %s, Average Grade: %.2f, Highest: %.2f, Lowest: %.2f%n",
-                              s.name, avg, highest, lowest);
+    static PrintStream bufferedStdout() {
+        return new PrintStream(new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), 1 << 16), false);
+    }
 
-            if (highest > overallHighest) overallHighest = highest;
-            if (lowest < overallLowest) overallLowest = lowest;
+    // The report plus a leaderboard, which needs the students themselves rather than a mapped roster
+    static void printSummary(List<Student> students, PrintStream out) {
+        printSummary(new StudentRoster(students), out);
+        printRanking(students, out);
+    }
 
-            totalSum += avg * s.grades.size();
-            totalGradesCount += s.grades.size();
+    static void printRanking(List<Student> students, PrintStream out) {
+        if (students.isEmpty()) return;
+        StudentRanking ranking = StudentRanking.of(students);
+        try {
+            out.println("\n----- Top Students -----");
+            for (Student s : ranking.top(10)) {
+                out.printf("%d. %s: %.2f%n", ranking.rankOf(s), s.name, s.getAverage());
+            }
+            out.printf("Students averaging 90 or above: %d of %d%n",
+                       ranking.countBetween(90, Double.POSITIVE_INFINITY), ranking.size());
+        } finally {
+            for (Student s : students) ranking.remove(s);
         }
+    }
+
+    static void printSummary(GradeRoster roster, PrintStream out) {
+        GradeReport report = GradeReport.compute(roster);
 
-        double overallAverage = totalGradesCount > 0 ? totalSum / totalGradesCount : 0;
+        out.println("\n----- Student Summary Report -----");
+        for (int i = 0; i < roster.size(); i++) {
+            out.printf("Student: %s, Average Grade: %.2f, Highest: %.2f, Lowest: %.2f%n",
+                       roster.name(i), report.averages[i], report.highest[i], report.lowest[i]);
+        }
 
-        System.out.println("\nOverall Highest Grade: " + overallHighest);
-        System.out.println("Overall Lowest Grade: " + overallLowest);
-        System.out.printf("Overall Average Grade: %.2f%n", overallAverage);
+        // Overall highest and lowest grades (among all students)
+        out.println("\nOverall Highest Grade: " + report.overall.getHighest());
+        out.println("Overall Lowest Grade: " + report.overall.getLowest());
+        out.printf("Overall Average Grade: %.2f%n", report.overall.getAverage());
 
-        scanner.close();
+        GradeHistogram distribution = report.distribution;
+        out.printf("Overall Median Grade: %.2f%n", distribution.median());
+        out.printf("Overall 90th Percentile: %.2f%n", distribution.quantile(0.9));
+        out.printf("Grade Bands: A (90+): %d, B (80-89): %d, C (70-79): %d, D (60-69): %d, F (<60): %d%n",
+                   distribution.countBetween(90, Double.POSITIVE_INFINITY),
+                   distribution.countBetween(80, 90),
+                   distribution.countBetween(70, 80),
+                   distribution.countBetween(60, 70),
+                   distribution.countBetween(Double.NEGATIVE_INFINITY, 60));
     }
 }
@@ -0,0 +1,160 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.regex.Pattern;
+
+// Small JMH-style harness shared by the bench suites. Each benchmark runs warmup and measured
+// iterations per dataset size and reports ops/sec plus bytes allocated per op by all threads (the gc.alloc.rate.norm
+// figure from JMH's -prof gc). Results are written as JMH-format JSON so releases can be diffed.
+//
+// Options: --sizes 1000,10000 --warmup 3 --iterations 5 --time-ms 1000 --filter <regex> --out <file.json>
+class BenchHarness {
+    interface Op {
+        double run() throws Exception;
+    }
+
+    interface Setup {
+        Op create(int size) throws Exception;
+    }
+
+    static volatile double sink; // keeps benchmark results alive so the JIT cannot drop the work
+
+    private final String suite;
+    private int[] sizes = { 1_000, 10_000, 100_000, 1_000_000, 10_000_000 };
+    private int warmupIterations = 3;
+    private int measureIterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+    private Pattern filter;
+    private String outFile;
+    private final List<String> results = new ArrayList<>();
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    BenchHarness(String suite, String[] args) {
+        this.suite = suite;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "--sizes" -> sizes = Arrays.stream(value.split(",")).mapToInt(v -> (int) Double.parseDouble(v)).toArray();
+                case "--warmup" -> warmupIterations = Integer.parseInt(value);
+                case "--iterations" -> measureIterations = Integer.parseInt(value);
+                case "--time-ms" -> iterationNanos = Long.parseLong(value) * 1_000_000L;
+                case "--filter" -> filter = Pattern.compile(value);
+                case "--out" -> outFile = value;
+                default -> throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+    }
+
+    void run(String name, Setup setup) throws Exception {
+        String benchmark = suite + "." + name;
+        if (filter != null && !filter.matcher(benchmark).find()) return;
+        for (int size : sizes) {
+            Op op = setup.create(size);
+            long batch = calibrate(op);
+            for (int i = 0; i < warmupIterations; i++) iteration(op, batch);
+
+            double[] scores = new double[measureIterations];
+            long allocated = 0;
+            long ops = 0;
+            for (int i = 0; i < measureIterations; i++) {
+                Map<Long, Long> allocBefore = allocatedByThread();
+                long[] counted = iteration(op, batch);
+                allocated += allocatedSince(allocBefore);
+                ops += counted[0];
+                scores[i] = counted[0] / (counted[1] / 1e9);
+            }
+            record(benchmark, size, scores, (double) allocated / ops);
+            op = null; // let the dataset be collected before the next size is built
+            System.gc();
+        }
+    }
+
+    // Bytes allocated so far by each live thread, so work handed to pools (fork-join, executors) counts too
+    private Map<Long, Long> allocatedByThread() {
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = threads.getThreadAllocatedBytes(ids);
+        Map<Long, Long> byThread = new HashMap<>(ids.length * 2);
+        for (int i = 0; i < ids.length; i++) if (bytes[i] >= 0) byThread.put(ids[i], bytes[i]);
+        return byThread;
+    }
+
+    // Allocated by all threads since the snapshot; threads that ended in between are not counted
+    private long allocatedSince(Map<Long, Long> before) {
+        long total = 0;
+        for (Map.Entry<Long, Long> now : allocatedByThread().entrySet()) total += now.getValue() - before.getOrDefault(now.getKey(), 0L);
+        return total;
+    }
+
+    void finish() throws IOException {
+        String json = "[\n" + String.join(",\n", results) + "\n]\n";
+        if (outFile == null) {
+            System.out.print(json);
+            return;
+        }
+        try (Writer out = new BufferedWriter(new FileWriter(outFile))) {
+            out.write(json);
+        }
+        System.err.println("# Results written to " + outFile);
+    }
+
+    // Number of ops per timed batch, so that reading the clock costs well under 1% of a batch
+    private long calibrate(Op op) throws Exception {
+        long batch = 1;
+        while (true) {
+            long start = System.nanoTime();
+            for (long i = 0; i < batch; i++) sink += op.run();
+            if (System.nanoTime() - start >= 1_000_000L || batch >= 1L << 30) return batch;
+            batch *= 2;
+        }
+    }
+
+    private long[] iteration(Op op, long batch) throws Exception {
+        long ops = 0;
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long now;
+        do {
+            for (long i = 0; i < batch; i++) sink += op.run();
+            ops += batch;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return new long[] { ops, now - start };
+    }
+
+    private void record(String benchmark, int size, double[] scores, double bytesPerOp) {
+        double mean = 0;
+        for (double s : scores) mean += s;
+        mean /= scores.length;
+        double variance = 0;
+        for (double s : scores) variance += (s - mean) * (s - mean);
+        double error = scores.length > 1 ? 2.576 * Math.sqrt(variance / (scores.length - 1)) / Math.sqrt(scores.length) : Double.NaN;
+
+        System.err.printf("# %s size=%d: %.3e ops/s (+- %.2e), %.1f B/op%n", benchmark, size, mean, error, bytesPerOp);
+        StringBuilder raw = new StringBuilder();
+        for (double s : scores) {
+            if (raw.length() > 0) raw.append(", ");
+            raw.append(num(s));
+        }
+        results.add("  {\n"
+                + "    \"benchmark\": \"" + benchmark + "\",\n"
+                + "    \"mode\": \"thrpt\",\n"
+                + "    \"warmupIterations\": " + warmupIterations + ",\n"
+                + "    \"measurementIterations\": " + measureIterations + ",\n"
+                + "    \"params\": { \"size\": \"" + size + "\" },\n"
+                + "    \"primaryMetric\": {\n"
+                + "      \"score\": " + num(mean) + ",\n"
+                + "      \"scoreError\": " + num(error) + ",\n"
+                + "      \"scoreUnit\": \"ops/s\",\n"
+                + "      \"rawData\": [[" + raw + "]]\n"
+                + "    },\n"
+                + "    \"secondaryMetrics\": {\n"
+                + "      \"gc.alloc.rate.norm\": { \"score\": " + num(bytesPerOp) + ", \"scoreUnit\": \"B/op\" }\n"
+                + "    }\n"
+                + "  }");
+    }
+
+    private static String num(double value) {
+        return Double.isFinite(value) ? Double.toString(value) : "\"NaN\"";
+    }
+}
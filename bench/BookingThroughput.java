@@ -0,0 +1,66 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+
+// End-to-end booking throughput with payments going through PaymentPipeline against a simulated
+// gateway. Every booking holds a room, authorizes asynchronously and settles; declined or failed
+// payments must leave the room free again. Reports bookings/sec and confirmation latency percentiles.
+//
+// Usage: BookingThroughput [bookings] [gatewayLatencyMillis] [maxBatch] [failureRate]
+public class BookingThroughput {
+    public static void main(String[] args) throws Exception {
+        int bookings = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        int maxBatch = args.length > 2 ? Integer.parseInt(args[2]) : 64;
+        double failureRate = args.length > 3 ? Double.parseDouble(args[3]) : 0.05;
+
+        Hotel hotel = new Hotel();
+        int roomCount = 256;
+        for (int i = 0; i < roomCount; i++) hotel.addRoom(new Room(100 + i, RoomType.values()[i % 3], 100));
+        Customer customer = new Customer("Bench", "bench@example.com", "555-0000");
+        LocalDate start = LocalDate.now().plusDays(30); // relative, so it stays inside Hotel.BOOKING_HORIZON_YEARS
+
+        PaymentGateway gateway = new SimulatedPaymentGateway(latency, failureRate, failureRate);
+        long[] confirmNanos = new long[bookings];
+        List<CompletableFuture<Boolean>> settled = new ArrayList<>(bookings);
+        long began = System.nanoTime();
+        try (PaymentPipeline payments = new PaymentPipeline(gateway, maxBatch, 2, Math.max(1_000, latency * 10), 3, 16)) {
+            for (int i = 0; i < bookings; i++) {
+                // Each booking gets its own night so every request finds a free room
+                LocalDate checkIn = start.plusDays(i / roomCount);
+                Room room = hotel.getRoom(100 + i % roomCount);
+                long submitted = System.nanoTime();
+                Reservation r = hotel.makeReservation(customer, room, checkIn, checkIn.plusDays(1));
+                if (r == null) throw new IllegalStateException("Room " + room.roomNumber + " unexpectedly taken");
+                int slot = i;
+                settled.add(payments.authorize(r.id, r.getTotalCost())
+                        .exceptionally(error -> false)
+                        .thenApply(paid -> {
+                            hotel.settlePayment(r, paid);
+                            confirmNanos[slot] = System.nanoTime() - submitted;
+                            return paid;
+                        }));
+            }
+            CompletableFuture.allOf(settled.toArray(CompletableFuture<?>[]::new)).join();
+        }
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        int confirmed = 0;
+        for (CompletableFuture<Boolean> f : settled) if (f.join()) confirmed++;
+        int live = hotel.getReservations().size();
+        if (live != confirmed) {
+            System.err.println("FAIL: " + confirmed + " payments confirmed but " + live + " reservations remain");
+            System.exit(1);
+        }
+        Arrays.sort(confirmNanos);
+        System.out.printf("%d bookings in %.2f s: %.0f bookings/s, %d confirmed, %d released%n",
+                bookings, seconds, bookings / seconds, confirmed, bookings - confirmed);
+        System.out.printf("confirmation latency p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                percentile(confirmNanos, 0.50), percentile(confirmNanos, 0.99), confirmNanos[bookings - 1] / 1e6);
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+}
@@ -0,0 +1,58 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+// Hot paths of StudentGradeTracker; size is the number of grades in the dataset
+public class GradeTrackerBench {
+    private static final int GRADES_PER_STUDENT = 50;
+
+    public static void main(String[] args) throws Exception {
+        BenchHarness bench = new BenchHarness("grades", args);
+
+        bench.run("Student.getAverage", size -> {
+            Student s = new Student("bench");
+            Random rand = new Random(42);
+            for (int i = 0; i < size; i++) s.addGrade(rand.nextInt(1001) / 10.0);
+            return s::getAverage;
+        });
+
+        bench.run("GradeReport.compute", size -> {
+            GradeRoster roster = new StudentRoster(roster(size));
+            return () -> GradeReport.compute(roster).overall.getSum();
+        });
+
+        bench.run("GradeCsvReader.readAll", size -> {
+            ByteArrayOutputStream csv = new ByteArrayOutputStream();
+            Random rand = new Random(42);
+            for (int i = 0; i < size; i++) {
+                csv.write(("Student " + (i / GRADES_PER_STUDENT) + "," + rand.nextInt(1001) / 10.0 + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] bytes = csv.toByteArray();
+            return () -> new GradeCsvReader(new ByteArrayInputStream(bytes)).readAll().size();
+        });
+
+        bench.run("RosterFile.roundTrip", size -> {
+            List<Student> students = roster(size);
+            Path file = Files.createTempFile("roster", ".sgt");
+            file.toFile().deleteOnExit();
+            return () -> {
+                RosterFile.save(students, file);
+                return GradeReport.compute(RosterFile.load(file)).overall.getSum();
+            };
+        });
+
+        bench.finish();
+    }
+
+    private static List<Student> roster(int grades) {
+        Random rand = new Random(42);
+        List<Student> students = new ArrayList<>();
+        for (int i = 0; i < grades; i++) {
+            if (i % GRADES_PER_STUDENT == 0) students.add(new Student("Student " + students.size()));
+            students.get(students.size() - 1).addGrade(rand.nextInt(1001) / 10.0);
+        }
+        return students;
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.*;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.util.*;
+
+// Hot paths of HotelReservationSystem; size is the number of rooms (and half as many reservations)
+public class HotelBench {
+    // Stays are placed relative to today so they always fall inside Hotel.BOOKING_HORIZON_YEARS
+    private static final LocalDate FIRST_NIGHT = LocalDate.now().plusDays(30);
+
+    public static void main(String[] args) throws Exception {
+        BenchHarness bench = new BenchHarness("hotel", args);
+
+        bench.run("Hotel.roomsOnMarket", size -> {
+            Hotel hotel = hotel(size);
+            RoomType[] types = RoomType.values();
+            int[] next = { 0 };
+            return () -> {
+                double sum = 0;
+                for (Room r : hotel.roomsOnMarket(types[next[0]++ % types.length])) sum += r.roomNumber;
+                return sum;
+            };
+        });
+
+        bench.run("Hotel.searchAvailableRoomsForStay", size -> {
+            Hotel hotel = hotel(size);
+            RoomType[] types = RoomType.values();
+            LocalDate checkIn = FIRST_NIGHT.plusDays(2);
+            int[] next = { 0 };
+            return () -> hotel.searchAvailableRooms(types[next[0]++ % types.length], checkIn, checkIn.plusDays(3)).size();
+        });
+
+        bench.run("HotelJournal.snapshotAndRecover", size -> {
+            Path dir = Files.createTempDirectory("hotel");
+            HotelJournal journal = HotelJournal.open(dir.resolve("hotel").toString(), Long.MAX_VALUE);
+            fill(journal.hotel(), size);
+            return () -> {
+                journal.snapshot();
+                try (HotelJournal recovered = HotelJournal.open(dir.resolve("hotel").toString())) {
+                    return recovered.hotel().getReservations().size();
+                }
+            };
+        });
+
+        bench.run("Hotel.makeReservation.journaled", size -> {
+            Path dir = Files.createTempDirectory("hotel");
+            HotelJournal journal = HotelJournal.open(dir.resolve("hotel").toString(), Long.MAX_VALUE);
+            Hotel hotel = journal.hotel();
+            fill(hotel, size);
+            Customer customer = new Customer("Bench", "bench@example.com", "555-0000");
+            long[] next = { 0 };
+            return () -> {
+                long n = next[0]++;
+                Room room = hotel.rooms.get((int) (n % size));
+                LocalDate checkIn = FIRST_NIGHT.plusYears(4).plusDays(n / size);
+                Reservation r = hotel.makeReservation(customer, room, checkIn, checkIn.plusDays(1));
+                hotel.cancelReservation(r);
+                return r.id;
+            };
+        });
+
+        bench.run("Hotel.summarize", size -> {
+            Hotel hotel = hotel(size);
+            LocalDate first = FIRST_NIGHT.minusDays(31);
+            int[] next = { 0 };
+            return () -> {
+                LocalDate from = first.plusDays(next[0]++ % 60);
+                return hotel.summarize(null, from, from.plusDays(30)).revPar();
+            };
+        });
+
+        bench.run("ReservationReport.csv", size -> {
+            Hotel hotel = hotel(size);
+            Writer sink = new Writer() {
+                long chars;
+                @Override public void write(char[] buf, int off, int len) { chars += len; }
+                @Override public void write(String str, int off, int len) { chars += len; }
+                @Override public void write(int c) { chars++; }
+                @Override public void flush() {}
+                @Override public void close() {}
+            };
+            ReservationReport report = new ReservationReport(sink, ReservationReport.Format.CSV);
+            ReservationFilter all = new ReservationFilter();
+            return () -> {
+                report.begin();
+                Iterator<Reservation> it = hotel.streamReservations(all).iterator();
+                while (it.hasNext()) report.write(it.next());
+                report.end();
+                return report.written();
+            };
+        });
+
+        bench.finish();
+    }
+
+    private static Hotel hotel(int rooms) {
+        Hotel hotel = new Hotel();
+        fill(hotel, rooms);
+        return hotel;
+    }
+
+    private static void fill(Hotel hotel, int rooms) {
+        RoomType[] types = RoomType.values();
+        LocalDate checkIn = FIRST_NIGHT;
+        for (int i = 0; i < rooms; i++) {
+            Room room = new Room(100 + i, types[i % types.length], 75 + 50 * (i % types.length));
+            hotel.addRoom(room);
+            if (i % 2 == 0) {
+                Customer customer = new Customer("Guest " + i, "guest" + i + "@example.com", "555-" + i);
+                hotel.makeReservation(customer, room, checkIn, checkIn.plusDays(1 + i % 7));
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Concurrency check for Hotel bookings: hundreds of threads book and cancel random stays at once,
+// then every room's reservations are checked for overlapping nights. Uses virtual threads when the
+// JDK has them (21+) and a pool of platform threads otherwise. Exits non-zero on any double booking.
+//
+// With a journal path the hotel is persisted through HotelJournal (one fsync per group commit), and
+// after the run the journal is recovered and compared with the live hotel. Nightly occupancy
+// analytics are checked against the surviving reservations.
+//
+// Usage: HotelStress [threads] [rooms] [operationsPerThread] [journalPath]
+public class HotelStress {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+        int roomCount = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+        int operations = args.length > 2 ? Integer.parseInt(args[2]) : 2_000;
+
+        HotelJournal journal = args.length > 3 ? HotelJournal.open(args[3], 1 << 20) : null;
+        Hotel hotel = journal != null ? journal.hotel() : new Hotel();
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 0; i < roomCount; i++) {
+            Room room = new Room(100 + i, RoomType.values()[i % 3], 100);
+            hotel.addRoom(room);
+            rooms.add(room);
+        }
+        LocalDate start = LocalDate.now().plusDays(30); // relative, so it stays inside Hotel.BOOKING_HORIZON_YEARS
+        Customer customer = new Customer("Stress", "stress@example.com", "555-0000");
+
+        // Everyone races for the same room and night: exactly one may win
+        AtomicInteger winners = new AtomicInteger();
+        runAll(threads, threads, t -> {
+            if (hotel.makeReservation(customer, rooms.get(0), start, start.plusDays(1)) != null) winners.incrementAndGet();
+        });
+        check(winners.get() == 1, "expected exactly one winner for a single room-night, got " + winners.get());
+
+        // Random mixed load over a 60-night window
+        AtomicInteger booked = new AtomicInteger();
+        AtomicInteger cancelled = new AtomicInteger();
+        long began = System.nanoTime();
+        runAll(threads, threads, t -> {
+            SplittableRandom rand = new SplittableRandom(t);
+            List<Reservation> mine = new ArrayList<>();
+            for (int i = 0; i < operations; i++) {
+                if (!mine.isEmpty() && rand.nextInt(3) == 0) {
+                    if (hotel.cancelReservation(mine.remove(rand.nextInt(mine.size())))) cancelled.incrementAndGet();
+                    continue;
+                }
+                LocalDate checkIn = start.plusDays(rand.nextInt(60));
+                Reservation r = hotel.makeReservation(customer, rooms.get(rand.nextInt(roomCount)),
+                                                      checkIn, checkIn.plusDays(1 + rand.nextInt(4)));
+                if (r != null) {
+                    mine.add(r);
+                    booked.incrementAndGet();
+                }
+            }
+        });
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        Map<Room, BitSet> nights = new HashMap<>();
+        int live = 0;
+        for (Reservation r : hotel.getReservations()) {
+            live++;
+            BitSet taken = nights.computeIfAbsent(r.room, k -> new BitSet());
+            for (long day = r.checkInDate.toEpochDay(); day < r.checkOutDate.toEpochDay(); day++) {
+                int night = (int) (day - start.toEpochDay());
+                check(!taken.get(night), "room " + r.room.roomNumber + " double-booked on " + LocalDate.ofEpochDay(day));
+                taken.set(night);
+            }
+        }
+        check(live == 1 + booked.get() - cancelled.get(), "reservation count mismatch: " + live);
+        for (Room room : rooms) {
+            BitSet taken = nights.getOrDefault(room, new BitSet());
+            for (int night = 0; night < 64; night++) {
+                LocalDate day = start.plusDays(night);
+                boolean free = hotel.isAvailable(room, day, day.plusDays(1));
+                check(free == !taken.get(night), "calendar out of sync for room " + room.roomNumber + " on " + day);
+            }
+        }
+
+        // Pre-aggregated analytics must agree with the reservations left standing
+        for (int night = 0; night < 64; night++) {
+            LocalDate day = start.plusDays(night);
+            int sold = 0;
+            for (BitSet taken : nights.values()) if (taken.get(night)) sold++;
+            long counted = hotel.summarize(null, day, day.plusDays(1)).roomNightsSold;
+            check(counted == sold, "analytics counted " + counted + " rooms sold on " + day + ", expected " + sold);
+        }
+
+        if (journal != null) {
+            journal.close();
+            Hotel recovered = HotelJournal.open(args[3]).hotel();
+            Map<Long, String> expected = new TreeMap<>();
+            for (Reservation r : hotel.getReservations()) expected.put(r.id, describe(r));
+            Map<Long, String> actual = new TreeMap<>();
+            for (Reservation r : recovered.getReservations()) actual.put(r.id, describe(r));
+            check(expected.equals(actual), "recovered reservations differ from the live hotel");
+        }
+
+        System.out.printf("OK: %d threads, %d bookings, %d cancellations, %d live reservations, %.0f ops/sec%n",
+                          threads, booked.get(), cancelled.get(), live, threads * (double) operations / seconds);
+    }
+
+    private static String describe(Reservation r) {
+        return r.room.roomNumber + " " + r.checkInDate + " " + r.checkOutDate + " " + r.paymentDone;
+    }
+
+    interface Task {
+        void run(int thread) throws Exception;
+    }
+
+    private static void runAll(int threads, int tasks, Task task) throws Exception {
+        ExecutorService executor;
+        try {
+            executor = (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            executor = Executors.newFixedThreadPool(threads);
+        }
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < tasks; t++) {
+            int id = t;
+            futures.add(executor.submit(() -> {
+                go.await();
+                task.run(id);
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> f : futures) f.get();
+        executor.shutdown();
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
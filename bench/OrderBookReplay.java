@@ -0,0 +1,138 @@
+import java.util.*;
+
+// Replays a synthetic order stream (limit orders around a drifting mid price, cancels of recent
+// orders, and market orders) through one OrderBook and reports order events per second. The
+// first events are also replayed through a simple TreeMap-based book, and the two must produce
+// the same executions. Exits non-zero on any difference.
+//
+// Usage: OrderBookReplay [events] [rounds]
+public class OrderBookReplay {
+    static final byte LIMIT = 0, CANCEL = 1, MARKET = 2;
+
+    public static void main(String[] args) {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        byte[] op = new byte[events];
+        boolean[] buy = new boolean[events];
+        long[] price = new long[events];
+        int[] qty = new int[events];
+        long[] target = new long[events];
+        SplittableRandom rand = new SplittableRandom(42);
+        long mid = 10_000;
+        long submits = 0;
+        for (int i = 0; i < events; i++) {
+            if ((i & 1023) == 0) mid += rand.nextInt(21) - 10;
+            int r = rand.nextInt(100);
+            if (r < 30 && submits > 0) {
+                op[i] = CANCEL;
+                target[i] = submits - rand.nextInt((int) Math.min(submits, 2_000));
+                continue;
+            }
+            op[i] = r < 90 ? LIMIT : MARKET;
+            buy[i] = rand.nextBoolean();
+            // Passive orders sit a few ticks behind mid; some cross it and trade
+            price[i] = mid + (buy[i] ? -1 : 1) * (rand.nextInt(20) - 3);
+            qty[i] = 1 + rand.nextInt(500);
+            submits++;
+        }
+
+        int verify = Math.min(events, 200_000);
+        long[] fast = new long[2];
+        replay(op, buy, price, qty, target, verify, (b, s, bo, so, p, q) -> fold(fast, b, s, p, q));
+        long[] slow = new long[2];
+        ReferenceBook reference = new ReferenceBook((b, s, bo, so, p, q) -> fold(slow, b, s, p, q));
+        for (int i = 0; i < verify; i++) {
+            if (op[i] == CANCEL) reference.cancel(target[i]);
+            else reference.submit(buy[i], op[i] == MARKET ? (buy[i] ? Long.MAX_VALUE : Long.MIN_VALUE) : price[i], qty[i], op[i] == MARKET);
+        }
+        if (!Arrays.equals(fast, slow)) {
+            System.out.println("FAILED: executions differ from the reference book over the first " + verify + " events");
+            System.exit(1);
+        }
+        System.out.printf("Verified %d events (%d executions) against the reference book%n", verify, fast[0]);
+
+        long[] trades = new long[2];
+        OrderBook.TradeListener count = (b, s, bo, so, p, q) -> {
+            trades[0]++;
+            trades[1] += q;
+        };
+        for (int round = 0; round < rounds; round++) {
+            trades[0] = trades[1] = 0;
+            long began = System.nanoTime();
+            OrderBook book = replay(op, buy, price, qty, target, events, count);
+            double seconds = (System.nanoTime() - began) / 1e9;
+            System.out.printf("round %d: %d events in %.3f s, %.2fM events/s, %d executions, %d shares, %d resting%n",
+                    round + 1, events, seconds, events / seconds / 1e6, trades[0], trades[1], book.restingOrders());
+        }
+    }
+
+    private static OrderBook replay(byte[] op, boolean[] buy, long[] price, int[] qty, long[] target, int events,
+                                    OrderBook.TradeListener listener) {
+        OrderBook book = new OrderBook(listener);
+        for (int i = 0; i < events; i++) {
+            switch (op[i]) {
+                case LIMIT -> book.submitLimit(buy[i] ? Transaction.Type.BUY : Transaction.Type.SELL, price[i], qty[i], 0);
+                case MARKET -> book.submitMarket(buy[i] ? Transaction.Type.BUY : Transaction.Type.SELL, qty[i], 0);
+                default -> book.cancel(target[i]);
+            }
+        }
+        return book;
+    }
+
+    private static void fold(long[] acc, long buyId, long sellId, long price, int q) {
+        acc[0]++;
+        acc[1] = acc[1] * 31 + buyId * 1_000_003 + sellId * 10_007 + price * 101 + q;
+    }
+
+    // Straightforward book: a TreeMap of FIFO queues per side
+    static final class ReferenceBook {
+        private final OrderBook.TradeListener listener;
+        private final TreeMap<Long, ArrayDeque<long[]>> bids = new TreeMap<>(Comparator.reverseOrder());
+        private final TreeMap<Long, ArrayDeque<long[]>> asks = new TreeMap<>();
+        private final Map<Long, long[]> live = new HashMap<>(); // id -> {id, price, qty, buy}
+        private long nextId = 1;
+
+        ReferenceBook(OrderBook.TradeListener listener) {
+            this.listener = listener;
+        }
+
+        void submit(boolean buy, long limit, int quantity, boolean ioc) {
+            long id = nextId++;
+            TreeMap<Long, ArrayDeque<long[]>> other = buy ? asks : bids;
+            while (quantity > 0 && !other.isEmpty()) {
+                Map.Entry<Long, ArrayDeque<long[]>> best = other.firstEntry();
+                long p = best.getKey();
+                if (buy ? p > limit : p < limit) break;
+                ArrayDeque<long[]> queue = best.getValue();
+                while (quantity > 0 && !queue.isEmpty()) {
+                    long[] o = queue.peekFirst();
+                    int fill = (int) Math.min(quantity, o[2]);
+                    quantity -= fill;
+                    o[2] -= fill;
+                    if (buy) listener.onTrade(id, o[0], 0, 0, p, fill);
+                    else listener.onTrade(o[0], id, 0, 0, p, fill);
+                    if (o[2] == 0) {
+                        queue.pollFirst();
+                        live.remove(o[0]);
+                    }
+                }
+                if (queue.isEmpty()) other.pollFirstEntry();
+            }
+            if (quantity > 0 && !ioc) {
+                long[] o = { id, limit, quantity, buy ? 1 : 0 };
+                (buy ? bids : asks).computeIfAbsent(limit, k -> new ArrayDeque<>()).addLast(o);
+                live.put(id, o);
+            }
+        }
+
+        void cancel(long id) {
+            long[] o = live.remove(id);
+            if (o == null) return;
+            TreeMap<Long, ArrayDeque<long[]>> side = o[3] == 1 ? bids : asks;
+            ArrayDeque<long[]> queue = side.get(o[1]);
+            queue.remove(o);
+            if (queue.isEmpty()) side.remove(o[1]);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Checks that PaymentPipeline's gateway slots are not held by whatever waits on the results. Every
+// payment's dependent blocks (standing in for a settle that waits on a journal fsync) until all
+// payments have been authorized; with slots held by those dependents the gateway would stall after
+// maxInFlight batches. Also checks that no more than maxInFlight gateway calls ever overlap and that
+// close() returns once every payment has completed. Exits non-zero on any failure.
+//
+// Usage: PaymentPipelineCheck [payments] [maxBatch] [maxInFlight]
+public class PaymentPipelineCheck {
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 256;
+        int maxBatch = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int maxInFlight = args.length > 2 ? Integer.parseInt(args[2]) : 2;
+
+        AtomicInteger authorized = new AtomicInteger();
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger maxCalls = new AtomicInteger();
+        PaymentGateway gateway = (ids, amounts) -> {
+            maxCalls.accumulateAndGet(calls.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            calls.decrementAndGet();
+            authorized.addAndGet(ids.length);
+            boolean[] approved = new boolean[ids.length];
+            Arrays.fill(approved, true);
+            return approved;
+        };
+
+        CountDownLatch settleAllowed = new CountDownLatch(1);
+        AtomicInteger settled = new AtomicInteger();
+        List<CompletableFuture<Void>> results = new ArrayList<>(count);
+        PaymentPipeline payments = new PaymentPipeline(gateway, maxBatch, 1, 10_000, 1, maxInFlight);
+        for (int i = 0; i < count; i++) {
+            results.add(payments.authorize(i, 100).thenAccept(paid -> {
+                try {
+                    settleAllowed.await();
+                } catch (InterruptedException e) {
+                    throw new CompletionException(e);
+                }
+                settled.incrementAndGet();
+            }));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (authorized.get() < count && System.nanoTime() < deadline) Thread.sleep(1);
+        check(authorized.get() == count, "gateway authorized " + authorized.get() + " of " + count
+              + " payments while their settles were pending; slots are held by dependents");
+        check(settled.get() == 0, "a settle ran before it was allowed to");
+        check(maxCalls.get() <= maxInFlight, maxCalls.get() + " gateway calls overlapped, limit " + maxInFlight);
+
+        settleAllowed.countDown();
+        CompletableFuture.allOf(results.toArray(CompletableFuture<?>[]::new)).get(10, TimeUnit.SECONDS);
+        check(settled.get() == count, settled.get() + " of " + count + " payments settled");
+        ExecutorService closer = Executors.newSingleThreadExecutor();
+        closer.submit(payments::close).get(10, TimeUnit.SECONDS);
+        closer.shutdown();
+
+        System.out.printf("OK: %d payments authorized in batches of up to %d with %d settles held, at most %d of %d gateway calls at once%n",
+                          count, maxBatch, count, maxCalls.get(), maxInFlight);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.nio.file.*;
+import java.util.*;
+
+// Correctness check for PriceHistory: feeds a random walk of ticks and trades into a history whose
+// bar rings are small enough that nearly every bar spills to disk, then compares the tick ring, SMA,
+// EMA, VWAP and volatility and every bar of every interval (spilled ones read back from their files)
+// against a direct recomputation from the raw events. It also relists a tracked symbol and keeps two
+// histories of one symbol side by side, checking that none of them share a spill file, that a closed
+// history ignores ticks, and that closing deletes the files. Exits non-zero on any mismatch.
+//
+// Usage: PriceHistoryCheck [events] [seed]
+public class PriceHistoryCheck {
+    private static final long[] INTERVALS = { 1_000, 7_000 };
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 2;
+        Path dir = Files.createTempDirectory("price-history");
+        PriceHistory.Settings settings = new PriceHistory.Settings(64, 8, INTERVALS, 10, 5, 20, dir);
+
+        long bars = checkIndicators(settings, events, seed);
+        checkSameSymbol(settings);
+        checkRelisting(settings);
+        try (DirectoryStream<Path> left = Files.newDirectoryStream(dir)) {
+            check(!left.iterator().hasNext(), "closed histories left spill files in " + dir);
+        }
+        Files.delete(dir);
+
+        System.out.printf("OK: %d events, %d bars over %d intervals match a direct recomputation%n", events, bars, INTERVALS.length);
+    }
+
+    private static long checkIndicators(PriceHistory.Settings settings, int events, long seed) throws Exception {
+        PriceHistory history = new PriceHistory("X", 100, settings);
+        // The constructor's tick opens bar 0 of each interval; the events start well after it
+        long t = PriceHistory.now() + 1_000_000_000L;
+        List<Double> prices = new ArrayList<>();
+        prices.add(100.0);
+        double price = 100, ema = 100, alpha = 2.0 / (settings.emaPeriod + 1);
+        double tradedNotional = 0;
+        long tradedVolume = 0;
+        List<List<Expected>> expected = new ArrayList<>();
+        for (int i = 0; i < INTERVALS.length; i++) expected.add(new ArrayList<>());
+
+        SplittableRandom rand = new SplittableRandom(seed);
+        for (int e = 0; e < events; e++) {
+            t += rand.nextInt(300);
+            boolean trade = rand.nextInt(4) == 0;
+            int qty = 0;
+            if (trade) {
+                // Trades go through at the last price
+                qty = 1 + rand.nextInt(50);
+                history.trade(t, price, qty);
+                tradedVolume += qty;
+                tradedNotional += price * qty;
+            } else {
+                price = Math.max(1, Math.round((price + rand.nextDouble() - 0.5) * 100) / 100.0);
+                history.tick(t, price);
+                prices.add(price);
+                ema += alpha * (price - ema);
+            }
+            for (int i = 0; i < INTERVALS.length; i++) {
+                List<Expected> series = expected.get(i);
+                long start = Math.floorDiv(t, INTERVALS[i]) * INTERVALS[i];
+                Expected bar = series.isEmpty() ? null : series.get(series.size() - 1);
+                if (bar == null || bar.start != start) series.add(bar = new Expected(start, price));
+                bar.high = Math.max(bar.high, price);
+                bar.low = Math.min(bar.low, price);
+                bar.close = price;
+                bar.volume += qty;
+                bar.notional += price * qty;
+            }
+        }
+
+        int n = prices.size();
+        check(history.ticks() == n, "ticks " + history.ticks() + ", expected " + n);
+        for (int back = 0; back < history.retainedTicks(); back++) {
+            check(history.price(back) == prices.get(n - 1 - back), "tick " + back + " back is " + history.price(back));
+        }
+        double sum = 0;
+        for (int i = n - settings.smaWindow; i < n; i++) sum += prices.get(i);
+        double sma = sum / settings.smaWindow;
+        check(Math.abs(history.sma() - sma) < 1e-9, "SMA " + history.sma() + ", expected " + sma);
+        check(Math.abs(history.ema() - ema) < 1e-9, "EMA " + history.ema() + ", expected " + ema);
+        double vwap = tradedNotional / tradedVolume;
+        check(Math.abs(history.vwap() - vwap) < 1e-9 * vwap, "VWAP " + history.vwap() + ", expected " + vwap);
+        double s = 0, ss = 0;
+        int w = settings.volatilityWindow;
+        for (int i = n - w; i < n; i++) {
+            double r = Math.log(prices.get(i) / prices.get(i - 1));
+            s += r;
+            ss += r * r;
+        }
+        double volatility = Math.sqrt(Math.max(0, (ss - s * s / w) / (w - 1)));
+        check(Math.abs(history.volatility() - volatility) < 1e-9, "volatility " + history.volatility() + ", expected " + volatility);
+
+        long checked = 0;
+        for (int i = 0; i < INTERVALS.length; i++) {
+            PriceHistory.BarSeries series = history.bars(i);
+            List<Expected> want = expected.get(i);
+            // Bar 0 is the constructor's; the last expected bar is still in progress
+            check(series.count() == want.size(), INTERVALS[i] + "ns: " + series.count() + " closed bars, expected " + want.size());
+            check(series.first() == 0, INTERVALS[i] + "ns: bars before " + series.first() + " were dropped");
+            check(series.bar(0).open == 100, INTERVALS[i] + "ns: first bar " + series.bar(0));
+            for (int k = 0; k < want.size() - 1; k++) {
+                checkBar(series.bar(k + 1), want.get(k), INTERVALS[i] + "ns bar " + (k + 1));
+                checked++;
+            }
+            checkBar(series.current(), want.get(want.size() - 1), INTERVALS[i] + "ns bar in progress");
+        }
+
+        history.close();
+        long ticks = history.ticks();
+        history.tick(t + 1_000_000, price + 1);
+        history.trade(t + 1_000_000, price + 1, 10);
+        check(history.ticks() == ticks && history.vwap() == vwap, "a closed history still records ticks");
+        // Spilled bars stay readable after the files are gone
+        checkBar(history.bars(0).bar(1), expected.get(0).get(0), "1000ns bar 1 after close");
+        return checked;
+    }
+
+    private static void checkSameSymbol(PriceHistory.Settings settings) throws Exception {
+        PriceHistory a = new PriceHistory("SAME", 10, settings);
+        PriceHistory b = new PriceHistory("SAME", 20, settings);
+        long t = PriceHistory.now() + 1_000_000_000L;
+        for (int i = 0; i < 1_000; i++, t += 1_000) {
+            a.tick(t, 10 + i);
+            b.tick(t, 20 + i);
+        }
+        // Bar i + 1 of each opened at its own i-th price, most of them read back from its own file
+        for (int i = 0; i < 990; i++) {
+            check(a.bars(0).bar(i + 1).open == 10 + i && b.bars(0).bar(i + 1).open == 20 + i, "histories of one symbol share bar " + (i + 1));
+        }
+        a.close();
+        b.tick(t, 1);
+        check(b.bars(0).bar(1).open == 20 && b.price(0) == 1, "closing one history of a symbol broke the other");
+        b.close();
+    }
+
+    private static void checkRelisting(PriceHistory.Settings settings) throws Exception {
+        Market market = new Market();
+        market.addStock(new Stock("RE", "Relisted", 10));
+        market.trackHistory(settings);
+        Stock old = market.getStock("RE");
+        PriceHistory before = old.history;
+        long t = PriceHistory.now() + 1_000_000_000L;
+        for (int i = 0; i < 100; i++, t += 1_000) before.tick(t, 10 + i);
+
+        Stock relisted = new Stock("RE", "Relisted", 50);
+        market.addStock(relisted);
+        PriceHistory after = market.history("RE");
+        check(after != null && after != before && old.history == null, "relisting did not replace the price history");
+        long ticks = before.ticks();
+        before.tick(t, 11); // from an update that read old.history just before the relisting
+        check(before.ticks() == ticks, "the replaced history still records ticks");
+        for (int i = 0; i < 100; i++, t += 1_000) after.tick(t, 50 + i);
+        check(after.bars(0).bar(50).open == 50 + 49, "relisted history reads bars " + after.bars(0).bar(50));
+        check(before.bars(0).bar(50).open == 10 + 49, "replaced history lost its spilled bars");
+
+        market.untrackHistory();
+        relisted.updatePrice(60);
+        relisted.recordTrade(60, 10);
+        check(market.history("RE") == null && after.ticks() == 101, "untracked history still records ticks");
+    }
+
+    private static void checkBar(PriceHistory.Bar bar, Expected want, String what) {
+        check(bar.startNanos == want.start && bar.open == want.open && bar.high == want.high && bar.low == want.low
+              && bar.close == want.close && bar.volume == want.volume, what + " is " + bar + ", expected " + want);
+        double vwap = want.notional / want.volume;
+        check(want.volume == 0 ? Double.isNaN(bar.vwap) : Math.abs(bar.vwap - vwap) < 1e-9 * vwap, what + " VWAP " + bar.vwap + ", expected " + vwap);
+    }
+
+    // A bar recomputed from the raw events
+    private static final class Expected {
+        final long start;
+        final double open;
+        double high, low, close, notional;
+        long volume;
+
+        Expected(long start, double open) {
+            this.start = start;
+            this.open = high = low = close = open;
+        }
+
+        @Override
+        public String toString() {
+            return new PriceHistory.Bar(start, open, high, low, close, volume, notional).toString();
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
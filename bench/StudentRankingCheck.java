@@ -0,0 +1,94 @@
+import java.util.*;
+
+// Correctness check for StudentRanking: applies a random mix of inserts, grade changes (which
+// re-key a ranked student through Student.addGrade), removals and re-inserts, and after every
+// batch compares size, rankOf for every student, top(k), bottom(k), between and countBetween
+// against a list sorted from scratch. Averages repeat often, so ties are covered: among equal
+// averages whoever was added first ranks higher. Exits non-zero on any mismatch.
+//
+// Usage: StudentRankingCheck [operations] [seed]
+public class StudentRankingCheck {
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        SplittableRandom rand = new SplittableRandom(seed);
+
+        StudentRanking ranking = new StudentRanking();
+        List<Student> all = new ArrayList<>();
+        Map<Student, Long> addedAt = new HashMap<>(); // ranked students and when they were (re-)added
+        long clock = 0;
+        int checks = 0;
+
+        for (int op = 1; op <= operations; op++) {
+            int kind = rand.nextInt(10);
+            if (kind < 3 || addedAt.isEmpty()) {
+                Student s = new Student("s" + all.size());
+                // Whole grades from a narrow range, so many students share an average
+                if (rand.nextBoolean()) s.addGrade(60 + rand.nextInt(5) * 10);
+                all.add(s);
+                ranking.add(s);
+                addedAt.put(s, clock++);
+            } else if (kind < 8) {
+                Student s = all.get(rand.nextInt(all.size()));
+                s.addGrade(60 + rand.nextInt(5) * 10); // re-keys it if ranked, does nothing to the ranking otherwise
+            } else if (kind < 9) {
+                Student s = all.get(rand.nextInt(all.size()));
+                check(ranking.remove(s) == addedAt.containsKey(s), "remove of " + s.name + " disagrees on membership");
+                addedAt.remove(s);
+            } else {
+                Student s = all.get(rand.nextInt(all.size()));
+                if (!addedAt.containsKey(s)) {
+                    ranking.add(s);
+                    addedAt.put(s, clock++);
+                }
+            }
+            if (op % 1_000 == 0 || op == operations) {
+                verify(ranking, all, addedAt, rand);
+                checks++;
+            }
+        }
+
+        System.out.printf("OK: %d operations on %d students, %d full comparisons against a sorted list%n",
+                          operations, all.size(), checks);
+    }
+
+    private static void verify(StudentRanking ranking, List<Student> all, Map<Student, Long> addedAt, SplittableRandom rand) {
+        List<Student> expected = new ArrayList<>(addedAt.keySet());
+        // Highest average first; among equal averages the earlier-added first
+        expected.sort(Comparator.comparingDouble(Student::getAverage).reversed()
+                .thenComparingLong(addedAt::get));
+        int n = expected.size();
+        check(ranking.size() == n, "size " + ranking.size() + ", expected " + n);
+        for (int i = 0; i < n; i++) {
+            Student s = expected.get(i);
+            check(ranking.rankOf(s) == i + 1, s.name + " ranked " + ranking.rankOf(s) + ", expected " + (i + 1));
+        }
+        for (Student s : all) {
+            if (!addedAt.containsKey(s)) check(ranking.rankOf(s) == 0, s.name + " is ranked after its removal");
+        }
+
+        int k = rand.nextInt(n + 2);
+        check(ranking.top(k).equals(expected.subList(0, Math.min(k, n))), "top(" + k + ")");
+        List<Student> reversed = new ArrayList<>(expected);
+        Collections.reverse(reversed);
+        check(ranking.bottom(k).equals(reversed.subList(0, Math.min(k, n))), "bottom(" + k + ")");
+
+        for (int q = 0; q < 5; q++) {
+            double a = 55 + rand.nextInt(50), b = 55 + rand.nextInt(50);
+            double low = Math.min(a, b), high = Math.max(a, b);
+            if (q == 0) low = high + 1; // an empty range
+            List<Student> inRange = new ArrayList<>();
+            for (Student s : expected) if (s.getAverage() >= low && s.getAverage() <= high) inRange.add(s);
+            check(ranking.between(low, high).equals(inRange), "between(" + low + ", " + high + ")");
+            check(ranking.countBetween(low, high) == inRange.size(),
+                  "countBetween(" + low + ", " + high + ") is " + ranking.countBetween(low, high) + ", expected " + inRange.size());
+        }
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
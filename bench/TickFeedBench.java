@@ -0,0 +1,68 @@
+import java.util.*;
+
+// Sustained tick throughput through MarketDataFeed: a simulated random walk is published to two
+// consumers, one applying prices to the market (re-marking every portfolio that holds the stock)
+// and one recording publish-to-consume latency. Reports ticks/sec and latency percentiles.
+//
+// Usage: TickFeedBench [ticks] [stocks] [portfolios] [ringSize]
+public class TickFeedBench {
+    public static void main(String[] args) {
+        long ticks = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000;
+        int stockCount = args.length > 1 ? Integer.parseInt(args[1]) : 1_000;
+        int portfolios = args.length > 2 ? Integer.parseInt(args[2]) : 1_000;
+        int ringSize = args.length > 3 ? Integer.parseInt(args[3]) : 1 << 16;
+
+        Market market = new Market();
+        for (int i = 0; i < stockCount; i++) market.addStock(new Stock("S" + i, "Company " + i, 10 + i % 1000));
+        SplittableRandom rand = new SplittableRandom(7);
+        List<User> users = new ArrayList<>();
+        for (int u = 0; u < portfolios; u++) {
+            User user = new User("u" + u, 0);
+            for (int k = 0; k < 10; k++) {
+                Stock stock = market.getStock("S" + rand.nextInt(stockCount));
+                user.portfolio.addStock(stock, 1 + rand.nextInt(100), stock.getPrice());
+            }
+            users.add(user);
+        }
+
+        // Sample every 16th tick so the recorder stays cheap and its buffer small
+        long[] samples = new long[(int) Math.min(ticks / 16 + 1, 1 << 24)];
+        int[] sampled = { 0 };
+        long[] seen = { 0 };
+        MarketDataFeed feed = new MarketDataFeed(ringSize);
+        feed.subscribe("prices", MarketDataFeed.priceUpdater());
+        feed.subscribe("latency", (stock, price, publishNanos) -> {
+            if ((seen[0]++ & 15) == 0 && sampled[0] < samples.length) samples[sampled[0]++] = System.nanoTime() - publishNanos;
+        });
+
+        long began = System.nanoTime();
+        feed.simulate(market, ticks, 0.001, 11);
+        feed.close();
+        double seconds = (System.nanoTime() - began) / 1e9;
+
+        // Every position must be marked at its stock's final price
+        for (User user : users) {
+            long expected = 0;
+            for (Portfolio.Position p : user.portfolio.getPositions()) {
+                expected += p.getQuantity() * Portfolio.cents(market.getStock(p.symbol).getPrice());
+            }
+            if (Math.round(user.portfolio.getValue() * 100) != expected) {
+                System.out.println("FAILED: " + user.username + " is not marked at the final prices");
+                System.exit(1);
+            }
+        }
+
+        long[] latency = Arrays.copyOf(samples, sampled[0]);
+        Arrays.sort(latency);
+        System.out.printf("%d ticks in %.2f s: %.2fM ticks/s (%d stocks, %d portfolios, ring %d)%n",
+                ticks, seconds, ticks / seconds / 1e6, stockCount, portfolios, ringSize);
+        System.out.printf("publish-to-consume latency p50 %.1f us, p99 %.1f us, p99.9 %.1f us%n",
+                percentile(latency, 0.50), percentile(latency, 0.99), percentile(latency, 0.999));
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e3;
+    }
+}
@@ -0,0 +1,176 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+// Hot paths of StockTradingPlatform; size is the number of listed stocks/holdings, or of transactions
+public class TradingBench {
+    public static void main(String[] args) throws Exception {
+        BenchHarness bench = new BenchHarness("trading", args);
+
+        bench.run("Portfolio.getValue", size -> {
+            Market market = market(size);
+            User user = new User("bench", 0);
+            for (int i = 0; i < size; i++) {
+                Stock stock = market.getStock(symbol(i));
+                user.portfolio.addStock(stock, 1 + i % 100, stock.getPrice());
+            }
+            return () -> user.portfolio.getValue();
+        });
+
+        bench.run("Stock.updatePrice.fanout", size -> {
+            // One stock held by size portfolios: each tick re-marks every position
+            Market market = market(1);
+            Stock stock = market.getStock(symbol(0));
+            for (int i = 0; i < size; i++) new User("u" + i, 0).portfolio.addStock(stock, 1 + i % 100, stock.getPrice());
+            double[] price = { stock.getPrice() };
+            return () -> {
+                price[0] = price[0] == 10 ? 10.01 : 10;
+                stock.updatePrice(price[0]);
+                return price[0];
+            };
+        });
+
+        bench.run("PriceHistory.tick", size -> {
+            // Price updates round-robin over up to 10000 stocks, each with tick, bar and indicator history
+            Market market = market(Math.min(size, 10_000));
+            market.trackHistory(PriceHistory.Settings.DEFAULT);
+            Stock[] stocks = market.getStocks().toArray(new Stock[0]);
+            int[] counter = { 0 };
+            return () -> {
+                int n = counter[0]++;
+                Stock stock = stocks[n % stocks.length];
+                double price = (n & 1) == 0 ? 10.01 : 10;
+                stock.updatePrice(price);
+                return stock.history.sma();
+            };
+        });
+
+        bench.run("Market.getStock", size -> {
+            Market market = market(size);
+            String[] queries = new String[size];
+            for (int i = 0; i < size; i++) queries[i] = (i & 1) == 0 ? symbol(i) : symbol(i).toLowerCase();
+            int[] next = { 0 };
+            return () -> market.getStock(queries[next[0]++ % size]).getPrice();
+        });
+
+        bench.run("Market.fluctuatePrices", size -> {
+            Market market = market(size);
+            return () -> {
+                market.fluctuatePrices();
+                return market.getStock(symbol(0)).getPrice();
+            };
+        });
+
+        bench.run("OrderEngine.execute", size -> {
+            Market market = market(size);
+            OrderEngine engine = new OrderEngine(market);
+            User user = new User("bench", 1e12);
+            String[] symbols = new String[size];
+            for (int i = 0; i < size; i++) symbols[i] = symbol(i);
+            int[] next = { 0 };
+            return () -> {
+                int n = next[0]++;
+                String symbol = symbols[(n >>> 1) % size];
+                // Alternate buy and sell of the same stock so holdings and balance stay bounded
+                OrderResult r = (n & 1) == 0 ? engine.buy(user, symbol, 10) : engine.sell(user, symbol, 10);
+                if (user.transactions.size() >= 1 << 20) user.transactions = new TradeLedger();
+                return r.price;
+            };
+        });
+
+        bench.run("RiskLimits.check", size -> {
+            // Pre-trade check of a buy for an account holding size stocks
+            Market market = market(size);
+            User user = new User("bench", 1e9);
+            for (int i = 0; i < size; i++) {
+                Stock stock = market.getStock(symbol(i));
+                user.portfolio.addStock(stock, 1 + i % 100, stock.getPrice());
+            }
+            RiskLimits limits = new RiskLimits(1_000, 1e6, 0.2);
+            Stock[] stocks = market.getStocks().toArray(new Stock[0]);
+            int[] counter = { 0 };
+            return () -> {
+                Stock stock = stocks[counter[0]++ % stocks.length];
+                return limits.check(user, stock, Transaction.Type.BUY, 10, stock.getPrice()) == null ? 1 : 0;
+            };
+        });
+
+        bench.run("Market.totalNetExposure", size -> {
+            // 1000 accounts holding 10 of size stocks each
+            Market market = market(size);
+            SplittableRandom rand = new SplittableRandom(5);
+            for (int u = 0; u < 1000; u++) {
+                User user = new User("u" + u, 0);
+                for (int k = 0; k < 10; k++) {
+                    Stock stock = market.getStock(symbol(rand.nextInt(size)));
+                    user.portfolio.addStock(stock, 1 + rand.nextInt(100), stock.getPrice());
+                }
+            }
+            return market::totalNetExposure;
+        });
+
+        bench.run("TradeLedger.summarize", size -> {
+            Market market = market(Math.min(size, 1000));
+            TradeLedger ledger = new TradeLedger();
+            SplittableRandom rand = new SplittableRandom(3);
+            for (int i = 0; i < size; i++) {
+                Stock stock = market.getStock(symbol(rand.nextInt(Math.min(size, 1000))));
+                // Buy twice as often as sell so positions stay long
+                ledger.append(stock, rand.nextInt(3) == 0 ? Transaction.Type.SELL : Transaction.Type.BUY, 1 + rand.nextInt(100), stock.getPrice());
+            }
+            return () -> ledger.summarize().size();
+        });
+
+        bench.run("AccountStore.append", size -> {
+            // Buy/sell round trips with every fill persisted; size is the number of listed stocks
+            Market market = market(Math.min(size, 1000));
+            Path dir = Files.createTempDirectory("trading");
+            AccountStore store = AccountStore.open(dir, "bench");
+            User user = new User("bench", 1e12);
+            store.create(user);
+            String[] symbols = new String[Math.min(size, 1000)];
+            for (int i = 0; i < symbols.length; i++) symbols[i] = symbol(i);
+            int[] counter = { 0 };
+            return () -> {
+                int n = counter[0]++;
+                Stock stock = market.getStock(symbols[(n >>> 1) % symbols.length]);
+                OrderResult r = (n & 1) == 0 ? user.buyStock(stock, 10, stock.getPrice()) : user.sellStock(stock, 10, stock.getPrice());
+                if (user.transactions.size() >= 1 << 20) user.transactions = new TradeLedger();
+                return r.price;
+            };
+        });
+
+        bench.run("AccountStore.load", size -> {
+            // size fills on 1000 stocks; load reads the latest snapshot and the log after it
+            Market market = market(Math.min(size, 1000));
+            Path dir = Files.createTempDirectory("trading");
+            try (AccountStore store = AccountStore.open(dir, "bench")) {
+                User user = new User("bench", 1e12);
+                store.create(user);
+                for (int i = 0; i < size; i++) {
+                    Stock stock = market.getStock(symbol(i % Math.min(size, 1000)));
+                    user.buyStock(stock, 1, stock.getPrice());
+                }
+            }
+            return () -> {
+                try (AccountStore store = AccountStore.open(dir, "bench")) {
+                    User user = store.load("bench", market);
+                    user.portfolio.detach();
+                    return store.trades();
+                }
+            };
+        });
+
+        bench.finish();
+    }
+
+    private static Market market(int stocks) {
+        Market market = new Market();
+        for (int i = 0; i < stocks; i++) market.addStock(new Stock(symbol(i), "Company " + i, 10 + i % 1000));
+        return market;
+    }
+
+    private static String symbol(int i) {
+        return "S" + i;
+    }
+}
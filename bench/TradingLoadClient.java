@@ -0,0 +1,122 @@
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+
+// Load generator for TradingServer: each simulated trader holds its own connection, logs in and
+// sends market orders one at a time on random listed symbols, timing each round trip. Reports
+// orders/sec and latency percentiles. Without a port it starts an in-process server (accounts in
+// memory) and afterwards checks every account's history against the fills the traders saw.
+//
+// Usage: TradingLoadClient [traders] [ordersPerTrader] [port]
+public class TradingLoadClient {
+    public static void main(String[] args) throws Exception {
+        int traders = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int ordersPerTrader = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        TradingServer server = args.length > 2 ? null : new TradingServer(market(), null, 0);
+        int port = server != null ? server.port() : Integer.parseInt(args[2]);
+
+        long[][] latencies = new long[traders][];
+        int[] fills = new int[traders];
+        CountDownLatch ready = new CountDownLatch(traders);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = Collections.synchronizedList(new ArrayList<>());
+        for (int t = 0; t < traders; t++) {
+            int trader = t;
+            Thread thread = new Thread(null, () -> {
+                try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                    socket.setTcpNoDelay(true);
+                    BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                    Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+                    expect(request(in, out, "LOGIN trader" + trader), "OK");
+                    String[] symbols = request(in, out, "SYMBOLS").substring(3).split(" ");
+                    ready.countDown();
+                    go.await();
+
+                    SplittableRandom rand = new SplittableRandom(trader);
+                    long[] latency = new long[ordersPerTrader];
+                    for (int i = 0; i < ordersPerTrader; i++) {
+                        String symbol = symbols[rand.nextInt(symbols.length)];
+                        // Buy more often than sell so traders build positions to sell from
+                        String side = rand.nextInt(5) < 3 ? "BUY " : "SELL ";
+                        long began = System.nanoTime();
+                        String reply = request(in, out, side + symbol + " " + (1 + rand.nextInt(5)));
+                        latency[i] = System.nanoTime() - began;
+                        if (reply.startsWith("FILLED")) fills[trader]++;
+                        else expect(reply, "REJECTED");
+                    }
+                    expect(request(in, out, "QUIT"), "BYE");
+                    latencies[trader] = latency;
+                } catch (Throwable e) {
+                    failures.add(e);
+                    ready.countDown();
+                }
+            }, "trader-" + t, 256 << 10);
+            threads.add(thread);
+            thread.start();
+        }
+        ready.await();
+        long began = System.nanoTime();
+        go.countDown();
+        for (Thread thread : threads) thread.join();
+        double seconds = (System.nanoTime() - began) / 1e9;
+        if (!failures.isEmpty()) {
+            System.out.println("FAILED: " + failures.size() + " traders failed, first: " + failures.get(0));
+            System.exit(1);
+        }
+
+        long orders = (long) traders * ordersPerTrader;
+        long filled = 0;
+        for (int f : fills) filled += f;
+        if (server != null) {
+            for (int t = 0; t < traders; t++) {
+                int recorded = server.account("trader" + t).history().size();
+                if (recorded != fills[t]) {
+                    System.out.println("FAILED: trader" + t + " saw " + fills[t] + " fills but " + recorded + " are recorded");
+                    System.exit(1);
+                }
+            }
+            server.close();
+        }
+
+        long[] all = new long[(int) orders];
+        int n = 0;
+        for (long[] latency : latencies) {
+            System.arraycopy(latency, 0, all, n, latency.length);
+            n += latency.length;
+        }
+        Arrays.sort(all);
+        System.out.printf("%d orders from %d traders in %.2f s: %.0f orders/s, %d filled%n",
+                orders, traders, seconds, orders / seconds, filled);
+        System.out.printf("round-trip latency p50 %.1f us, p90 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                percentile(all, 0.50), percentile(all, 0.90), percentile(all, 0.99), percentile(all, 0.999),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e3);
+    }
+
+    private static Market market() {
+        Market market = new Market();
+        for (int i = 0; i < 100; i++) market.addStock(new Stock("S" + i, "Company " + i, 10 + i));
+        return market;
+    }
+
+    private static String request(BufferedReader in, Writer out, String line) throws IOException {
+        out.write(line);
+        out.write('\n');
+        out.flush();
+        String reply = in.readLine();
+        if (reply == null) throw new EOFException("server closed the connection");
+        return reply;
+    }
+
+    private static void expect(String reply, String prefix) {
+        if (!reply.startsWith(prefix)) throw new IllegalStateException("unexpected reply: " + reply);
+    }
+
+    private static double percentile(long[] sorted, double q) {
+        if (sorted.length == 0) return 0;
+        int rank = (int) Math.ceil(q * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e3;
+    }
+}
@@ -0,0 +1,118 @@
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Concurrency check for OrderEngine: many threads trade random market orders for a set of shared
+// accounts while another thread keeps repricing every stock. Afterwards each account's balance and
+// holdings must match what its transaction history says, every fill must be in that history, and
+// the incrementally maintained portfolio value must equal the holdings at the final prices. Half
+// the accounts trade under risk limits, which no buy may breach, and the market's firm-wide net
+// shares per symbol must equal the sum of all holdings. Exits non-zero on any mismatch.
+//
+// Usage: TradingStress [threads] [users] [stocks] [ordersPerThread]
+public class TradingStress {
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int userCount = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int stockCount = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int orders = args.length > 3 ? Integer.parseInt(args[3]) : 20_000;
+        double initialBalance = 1_000_000;
+
+        Market market = new Market();
+        for (int i = 0; i < stockCount; i++) market.addStock(new Stock("S" + i, "Company " + i, 10 + i));
+        OrderEngine engine = new OrderEngine(market);
+        List<User> users = new ArrayList<>();
+        RiskLimits limits = new RiskLimits(150, 2_000, 0.25);
+        for (int i = 0; i < userCount; i++) {
+            User user = new User("trader" + i, initialBalance);
+            if (i % 2 == 1) user.limits = limits;
+            users.add(user);
+        }
+
+        AtomicBoolean trading = new AtomicBoolean(true);
+        Thread pricer = new Thread(() -> {
+            while (trading.get()) market.fluctuatePrices();
+        });
+        pricer.start();
+
+        AtomicLong fills = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        long began = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            futures.add(executor.submit(() -> {
+                go.await();
+                SplittableRandom rand = new SplittableRandom(id);
+                for (int i = 0; i < orders; i++) {
+                    User user = users.get(rand.nextInt(userCount));
+                    String symbol = "S" + rand.nextInt(stockCount);
+                    int qty = 1 + rand.nextInt(20);
+                    OrderResult r = rand.nextBoolean() ? engine.buy(user, symbol, qty) : engine.sell(user, symbol, qty);
+                    if (r.isFilled()) fills.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        go.countDown();
+        for (Future<?> f : futures) f.get();
+        double seconds = (System.nanoTime() - began) / 1e9;
+        executor.shutdown();
+        trading.set(false);
+        pricer.join();
+
+        long recorded = 0;
+        long[] netShares = new long[stockCount];
+        for (User user : users) {
+            double cash = initialBalance;
+            Map<String, Integer> held = new HashMap<>();
+            TradeLedger ledger = user.transactions;
+            for (int row = 0; row < ledger.size(); row++) {
+                int signed = ledger.isBuy(row) ? ledger.quantityAt(row) : -ledger.quantityAt(row);
+                cash -= signed * ledger.priceCentsAt(row) / 100.0;
+                int after = held.merge(ledger.symbolAt(row), signed, Integer::sum);
+                check(after >= 0, user.username + " sold " + ledger.symbolAt(row) + " it did not hold");
+                if (user.limits == limits) {
+                    check(after <= limits.maxPosition, user.username + " holds " + after + " " + ledger.symbolAt(row) + " over its position limit");
+                    // Sells only reduce a position, so only buys are held to the notional limit
+                    check(!ledger.isBuy(row) || ledger.quantityAt(row) * ledger.priceCentsAt(row) <= limits.maxOrderNotionalCents,
+                          user.username + " filled a buy over its notional limit");
+                }
+            }
+            check(ledger.getRealizedPnl() == user.portfolio.getRealizedPnl(),
+                  user.username + " ledger realized P&L " + ledger.getRealizedPnl() + ", portfolio says " + user.portfolio.getRealizedPnl());
+            check(Math.abs(cash - user.balance) < 1e-6 * initialBalance, user.username + " balance " + user.balance + ", history says " + cash);
+            check(user.balance >= 0, user.username + " has a negative balance");
+            for (int i = 0; i < stockCount; i++) {
+                String symbol = "S" + i;
+                check(user.portfolio.getQuantity(symbol) == held.getOrDefault(symbol, 0),
+                      user.username + " holds " + user.portfolio.getQuantity(symbol) + " " + symbol + ", history says " + held.getOrDefault(symbol, 0));
+                netShares[i] += held.getOrDefault(symbol, 0);
+            }
+            long marked = 0;
+            for (int i = 0; i < stockCount; i++) {
+                Stock stock = market.getStock("S" + i);
+                marked += user.portfolio.getQuantity(stock.symbol) * Portfolio.cents(stock.getPrice());
+            }
+            check(Math.round(user.portfolio.getValue() * 100) == marked,
+                  user.username + " portfolio valued at " + user.portfolio.getValue() + ", current prices say " + marked / 100.0);
+            recorded += user.transactions.size();
+        }
+        check(recorded == fills.get(), fills.get() + " fills but " + recorded + " transactions recorded");
+        for (int i = 0; i < stockCount; i++) {
+            check(market.netShares("S" + i) == netShares[i], "net S" + i + " is " + market.netShares("S" + i) + ", accounts hold " + netShares[i]);
+        }
+
+        System.out.printf("OK: %d threads, %d users, %d fills of %d orders, %.0f orders/sec%n",
+                          threads, userCount, fills.get(), (long) threads * orders, threads * (double) orders / seconds);
+    }
+
+    private static void check(boolean condition, String message) {
+        if (!condition) {
+            System.out.println("FAILED: " + message);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,20 @@
+#!/bin/sh
+# Builds each application together with its benchmark suite and runs it, writing JMH-format JSON
+# results to bench-results/<suite>.json. Extra arguments go to every suite, e.g.
+#   bench/run.sh --sizes 1000,100000 --filter getValue
+set -e
+cd "$(dirname "$0")/.."
+mkdir -p bench-results
+
+run() {
+    suite=$1
+    app=$2
+    shift 2
+    rm -rf "build/bench/$suite"
+    javac -encoding UTF-8 -d "build/bench/$suite" "$app" bench/BenchHarness.java "bench/$suite.java"
+    java -Xms2g -cp "build/bench/$suite" "$suite" --out "bench-results/$suite.json" "$@"
+}
+
+run GradeTrackerBench StudentGradeTracker.java "$@"
+run HotelBench HotelReservationSystem.java "$@"
+run TradingBench StockTradingPlatform.java "$@"